@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.zhanghai.android.fastscroll.core.ItemGeometry;
+import me.zhanghai.android.fastscroll.core.ItemOffset;
+import me.zhanghai.android.fastscroll.core.ScrollbarGeometry;
+
+/**
+ * A whole drag of the thumb from the top to the bottom of the track and back, with every event
+ * going from the touch position all the way to the item to scroll to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class DragBenchmark {
+
+    private static final int VIEW_HEIGHT = 2200;
+    private static final int PADDING_TOP = 96;
+    private static final int PADDING_BOTTOM = 48;
+    private static final int THUMB_HEIGHT = 144;
+    private static final int ITEM_HEIGHT = 168;
+
+    @Param({ "1000", "100000", "10000000" })
+    public int itemCount;
+
+    @Param({ "120", "1200" })
+    public int eventCount;
+
+    private float[] mEventYs;
+
+    private int mScrollRange;
+
+    private final ItemOffset mItemOffset = new ItemOffset();
+
+    @Setup
+    public void setUp() {
+        mEventYs = new float[eventCount];
+        int half = eventCount / 2;
+        for (int i = 0; i < eventCount; ++i) {
+            float fraction = i < half ? (float) i / half : (float) (eventCount - i) / half;
+            // Add some sub-pixel tremor as a real finger would.
+            float tremor = ((i * 31) % 7 - 3) * 0.2f;
+            mEventYs[i] = PADDING_TOP + fraction * (VIEW_HEIGHT - PADDING_TOP - PADDING_BOTTOM)
+                    + tremor;
+        }
+        mScrollRange = ItemGeometry.getScrollRange(0, itemCount, ITEM_HEIGHT, 0);
+    }
+
+    @Benchmark
+    public int drag() {
+        int scrollOffsetRange = ScrollbarGeometry.getScrollOffsetRange(mScrollRange, VIEW_HEIGHT);
+        int thumbOffsetRange = ScrollbarGeometry.getThumbOffsetRange(VIEW_HEIGHT, PADDING_TOP,
+                PADDING_BOTTOM, THUMB_HEIGHT);
+        float dragStartY = mEventYs[0];
+        int dragStartThumbOffset = 0;
+        int result = 0;
+        for (float eventY : mEventYs) {
+            int thumbOffset = dragStartThumbOffset + (int) (eventY - dragStartY);
+            int scrollOffset = ScrollbarGeometry.getScrollOffset(thumbOffset, thumbOffsetRange,
+                    scrollOffsetRange);
+            ItemGeometry.findRowAtScrollOffset(scrollOffset, 0, ITEM_HEIGHT, mItemOffset);
+            result += mItemOffset.position + mItemOffset.offset;
+        }
+        return result;
+    }
+}
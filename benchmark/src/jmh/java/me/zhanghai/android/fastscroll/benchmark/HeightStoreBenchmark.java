@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.zhanghai.android.fastscroll.core.ItemOffset;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+
+/**
+ * Offset queries on a {@link RunLengthHeightStore} where most rows share a handful of heights,
+ * with a heap limit small enough that most blocks are spilled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HeightStoreBenchmark {
+
+    private static final int UNKNOWN_HEIGHT = 168;
+
+    @Param({ "100000", "50000000" })
+    public int rowCount;
+
+    @Param({ "65536", "1073741824" })
+    public long maxResidentBytes;
+
+    private RunLengthHeightStore mStore;
+
+    private long mTotalHeight;
+
+    private long mOffset;
+
+    private final ItemOffset mItemOffset = new ItemOffset();
+
+    @Setup
+    public void setUp() {
+        mStore = new RunLengthHeightStore(maxResidentBytes, new File(
+                System.getProperty("java.io.tmpdir")));
+        mStore.setRowCount(rowCount);
+        Random random = new Random(1);
+        int height = 168;
+        for (int row = 0; row < rowCount; ++row) {
+            // About 1% of the rows start a run of a different height.
+            if (random.nextInt(100) == 0) {
+                height = 96 + 24 * random.nextInt(4);
+            }
+            mStore.setHeight(row, height);
+        }
+        mTotalHeight = mStore.getTotalHeight(UNKNOWN_HEIGHT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Benchmark
+    public int offsetToRow() {
+        mOffset = (mOffset + 7_919L * UNKNOWN_HEIGHT + 13) % mTotalHeight;
+        mStore.findRow(mOffset, UNKNOWN_HEIGHT, mItemOffset);
+        return mItemOffset.position + mItemOffset.offset;
+    }
+
+    @Benchmark
+    public long rowToOffset() {
+        mOffset = (mOffset + 7_919L * UNKNOWN_HEIGHT + 13) % mTotalHeight;
+        int row = (int) ((long) rowCount * mOffset / mTotalHeight);
+        return mStore.getOffset(row, UNKNOWN_HEIGHT);
+    }
+}
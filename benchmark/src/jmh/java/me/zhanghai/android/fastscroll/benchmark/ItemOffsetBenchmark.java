@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.zhanghai.android.fastscroll.core.ItemGeometry;
+import me.zhanghai.android.fastscroll.core.ItemOffset;
+
+/**
+ * Lookups between scroll offsets and item positions, as done by {@code RecyclerViewHelper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ItemOffsetBenchmark {
+
+    private static final int ITEM_HEIGHT = 168;
+    private static final int PADDING_TOP = 24;
+    private static final int PADDING_BOTTOM = 24;
+
+    @Param({ "1000", "100000", "10000000" })
+    public int itemCount;
+
+    @Param({ "1", "3" })
+    public int spanCount;
+
+    private int mScrollRange;
+
+    private int mScrollOffset;
+
+    private final ItemOffset mItemOffset = new ItemOffset();
+
+    @Setup
+    public void setUp() {
+        int rowCount = ItemGeometry.getRowCount(itemCount, spanCount);
+        mScrollRange = ItemGeometry.getScrollRange(PADDING_TOP, rowCount, ITEM_HEIGHT,
+                PADDING_BOTTOM);
+    }
+
+    @Benchmark
+    public int offsetToPosition() {
+        mScrollOffset = (int) ((mScrollOffset + 7_919L * ITEM_HEIGHT + 13) % mScrollRange);
+        ItemGeometry.findRowAtScrollOffset(mScrollOffset, PADDING_TOP, ITEM_HEIGHT, mItemOffset);
+        return ItemGeometry.getFirstPositionInRow(mItemOffset.position, spanCount)
+                + mItemOffset.offset;
+    }
+
+    @Benchmark
+    public int positionToOffset() {
+        mScrollOffset = (int) ((mScrollOffset + 7_919L * ITEM_HEIGHT + 13) % mScrollRange);
+        int position = (int) ((long) itemCount * mScrollOffset / mScrollRange);
+        int row = ItemGeometry.getRow(position, spanCount);
+        return ItemGeometry.getScrollOffset(PADDING_TOP, row, ITEM_HEIGHT, -(mScrollOffset % 97));
+    }
+}
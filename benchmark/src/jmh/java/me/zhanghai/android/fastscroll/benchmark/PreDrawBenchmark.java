@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.zhanghai.android.fastscroll.core.PopupGeometry;
+import me.zhanghai.android.fastscroll.core.ScrollbarGeometry;
+
+/**
+ * The layout math done by {@code FastScroller.onPreDraw()} on every frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PreDrawBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2200;
+    private static final int PADDING_TOP = 96;
+    private static final int PADDING_BOTTOM = 48;
+    private static final int THUMB_WIDTH = 24;
+    private static final int THUMB_HEIGHT = 144;
+    private static final int POPUP_WIDTH = 264;
+    private static final int POPUP_HEIGHT = 264;
+    private static final int POPUP_MARGIN_END = 48;
+    private static final int SCROLL_RANGE = 1_000_000;
+
+    private int mScrollOffset;
+
+    @Benchmark
+    public int preDraw() {
+        int scrollOffsetRange = ScrollbarGeometry.getScrollOffsetRange(SCROLL_RANGE, VIEW_HEIGHT);
+        int thumbOffsetRange = ScrollbarGeometry.getThumbOffsetRange(VIEW_HEIGHT, PADDING_TOP,
+                PADDING_BOTTOM, THUMB_HEIGHT);
+        mScrollOffset = (mScrollOffset + 997) % scrollOffsetRange;
+        int thumbOffset = ScrollbarGeometry.getThumbOffset(mScrollOffset, scrollOffsetRange,
+                thumbOffsetRange);
+        int thumbTop = PADDING_TOP + thumbOffset;
+        int popupLeft = PopupGeometry.getPopupLeft(false, VIEW_WIDTH, 0, 0, THUMB_WIDTH, 0,
+                POPUP_MARGIN_END, POPUP_WIDTH);
+        int popupTop = PopupGeometry.getPopupTop(thumbTop, THUMB_HEIGHT / 2, POPUP_HEIGHT / 2,
+                VIEW_HEIGHT, PADDING_TOP, PADDING_BOTTOM, 0, 0, POPUP_HEIGHT);
+        return popupLeft + popupTop;
+    }
+
+    @Benchmark
+    public boolean isInTouchTarget() {
+        mScrollOffset = (mScrollOffset + 7) % VIEW_HEIGHT;
+        return ScrollbarGeometry.isInTouchTarget(VIEW_WIDTH - 10, VIEW_WIDTH - THUMB_WIDTH,
+                VIEW_WIDTH, 0, VIEW_WIDTH, 144)
+                && ScrollbarGeometry.isInTouchTarget(mScrollOffset, 600, 600 + THUMB_HEIGHT, 0,
+                VIEW_HEIGHT, 144);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * A hysteresis filter for a position, which follows movement in the current direction exactly but
+ * ignores reversals smaller than a threshold, so that tremor of a held finger doesn't change the
+ * output.
+ */
+public class HysteresisFilter {
+
+    private final float mThreshold;
+
+    private float mValue;
+    private int mDirection;
+
+    public HysteresisFilter(float threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * Reset the filter to a value with no direction, so that the next movement in either
+     * direction needs to exceed the threshold.
+     */
+    public void reset(float value) {
+        mValue = value;
+        mDirection = 0;
+    }
+
+    public float filter(float value) {
+        float delta = value - mValue;
+        if (delta == 0) {
+            return mValue;
+        }
+        int direction = delta > 0 ? 1 : -1;
+        if (direction == mDirection || Math.abs(delta) > mThreshold) {
+            mValue = value;
+            mDirection = direction;
+        }
+        return mValue;
+    }
+
+    public float getValue() {
+        return mValue;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Scroll arithmetic for a list of rows that all have the same height, optionally with multiple
+ * items in each row as in a grid.
+ */
+public class ItemGeometry {
+
+    public static final int NO_POSITION = -1;
+
+    private ItemGeometry() {}
+
+    public static int getRowCount(int itemCount, int spanCount) {
+        if (itemCount == 0) {
+            return 0;
+        }
+        return (itemCount - 1) / spanCount + 1;
+    }
+
+    public static int getRow(int position, int spanCount) {
+        if (position == NO_POSITION) {
+            return NO_POSITION;
+        }
+        return position / spanCount;
+    }
+
+    public static int getFirstPositionInRow(int row, int spanCount) {
+        return row * spanCount;
+    }
+
+    public static int getScrollRange(int paddingTop, int rowCount, int rowHeight,
+                                     int paddingBottom) {
+        if (rowCount == 0 || rowHeight == 0) {
+            return 0;
+        }
+        return paddingTop + rowCount * rowHeight + paddingBottom;
+    }
+
+    public static int getScrollOffset(int paddingTop, int firstRow, int rowHeight,
+                                      int firstRowTop) {
+        if (firstRow == NO_POSITION) {
+            return 0;
+        }
+        return paddingTop + firstRow * rowHeight - firstRowTop;
+    }
+
+    /**
+     * Find the row that should be the first one when the content is scrolled to the offset.
+     *
+     * @param outRowOffset receives the row, and the offset of its top from the top of the view
+     */
+    public static void findRowAtScrollOffset(int scrollOffset, int paddingTop, int rowHeight,
+                                             @NonNull ItemOffset outRowOffset) {
+        scrollOffset -= paddingTop;
+        // The row should be non-negative even if paddingTop is greater than row height.
+        int row = Math.max(0, scrollOffset / rowHeight);
+        int rowTop = row * rowHeight - scrollOffset;
+        outRowOffset.set(row, rowTop);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An estimator for the average item height of a list with multiple view types, from running
+ * statistics of the heights measured for each view type and the distribution of view types in the
+ * list.
+ * <p>
+ * View types without any measured height are estimated with the average of all measured heights.
+ * The estimator only allocates when it sees a new view type.
+ */
+public class ItemHeightEstimator {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] mViewTypes = new int[INITIAL_CAPACITY];
+    private long[] mHeightSums = new long[INITIAL_CAPACITY];
+    private int[] mHeightCounts = new int[INITIAL_CAPACITY];
+    private int[] mItemCounts = new int[INITIAL_CAPACITY];
+    private int mViewTypeCount;
+
+    private long mTotalHeightSum;
+    private int mTotalHeightCount;
+    private long mTotalItemCount;
+
+    public void addHeight(int viewType, int height) {
+        int index = getOrAddIndex(viewType);
+        mHeightSums[index] += height;
+        ++mHeightCounts[index];
+        mTotalHeightSum += height;
+        ++mTotalHeightCount;
+    }
+
+    public boolean hasHeights() {
+        return mTotalHeightCount > 0;
+    }
+
+    public void clearHeights() {
+        Arrays.fill(mHeightSums, 0, mViewTypeCount, 0);
+        Arrays.fill(mHeightCounts, 0, mViewTypeCount, 0);
+        mTotalHeightSum = 0;
+        mTotalHeightCount = 0;
+    }
+
+    /**
+     * Write the measured heights, which are the part of the state that takes scrolling to build
+     * up. The distribution of view types isn't written because it can be sampled again.
+     */
+    public void writeHeightsTo(@NonNull DataOutputStream output) throws IOException {
+        int viewTypeCount = 0;
+        for (int i = 0; i < mViewTypeCount; ++i) {
+            if (mHeightCounts[i] > 0) {
+                ++viewTypeCount;
+            }
+        }
+        VarInts.writeVarInt(output, viewTypeCount);
+        for (int i = 0; i < mViewTypeCount; ++i) {
+            int heightCount = mHeightCounts[i];
+            if (heightCount == 0) {
+                continue;
+            }
+            VarInts.writeVarInt(output, VarInts.zigZag(mViewTypes[i]));
+            VarInts.writeVarLong(output, mHeightSums[i]);
+            VarInts.writeVarInt(output, heightCount);
+        }
+    }
+
+    public void readHeightsFrom(@NonNull DataInputStream input) throws IOException {
+        clearHeights();
+        int viewTypeCount = VarInts.readVarInt(input);
+        if (viewTypeCount < 0) {
+            throw new IOException("Malformed view type count " + viewTypeCount);
+        }
+        for (int i = 0; i < viewTypeCount; ++i) {
+            int viewType = VarInts.unZigZag(VarInts.readVarInt(input));
+            long heightSum = VarInts.readVarLong(input);
+            int heightCount = VarInts.readVarInt(input);
+            if (heightSum < 0 || heightCount <= 0) {
+                clearHeights();
+                throw new IOException("Malformed heights for view type " + viewType);
+            }
+            int index = getOrAddIndex(viewType);
+            mHeightSums[index] += heightSum;
+            mHeightCounts[index] += heightCount;
+            mTotalHeightSum += heightSum;
+            mTotalHeightCount += heightCount;
+        }
+    }
+
+    /**
+     * Add items of a view type to the distribution of view types, which may be from a sample of
+     * the list because only the proportions matter.
+     */
+    public void addItems(int viewType, int count) {
+        int index = getOrAddIndex(viewType);
+        mItemCounts[index] += count;
+        mTotalItemCount += count;
+    }
+
+    public void clearItems() {
+        Arrays.fill(mItemCounts, 0, mViewTypeCount, 0);
+        mTotalItemCount = 0;
+    }
+
+    /**
+     * @return the estimated average item height, or {@code 0} if no height has been added
+     */
+    public double getAverageHeight() {
+        if (mTotalHeightCount == 0) {
+            return 0;
+        }
+        double totalAverageHeight = (double) mTotalHeightSum / mTotalHeightCount;
+        if (mTotalItemCount == 0) {
+            return totalAverageHeight;
+        }
+        double weightedHeightSum = 0;
+        for (int i = 0; i < mViewTypeCount; ++i) {
+            int itemCount = mItemCounts[i];
+            if (itemCount == 0) {
+                continue;
+            }
+            int heightCount = mHeightCounts[i];
+            double averageHeight = heightCount > 0 ? (double) mHeightSums[i] / heightCount
+                    : totalAverageHeight;
+            weightedHeightSum += itemCount * averageHeight;
+        }
+        return weightedHeightSum / mTotalItemCount;
+    }
+
+    private int getOrAddIndex(int viewType) {
+        for (int i = 0; i < mViewTypeCount; ++i) {
+            if (mViewTypes[i] == viewType) {
+                return i;
+            }
+        }
+        if (mViewTypeCount == mViewTypes.length) {
+            int capacity = 2 * mViewTypeCount;
+            mViewTypes = Arrays.copyOf(mViewTypes, capacity);
+            mHeightSums = Arrays.copyOf(mHeightSums, capacity);
+            mHeightCounts = Arrays.copyOf(mHeightCounts, capacity);
+            mItemCounts = Arrays.copyOf(mItemCounts, capacity);
+        }
+        int index = mViewTypeCount;
+        mViewTypes[index] = viewType;
+        ++mViewTypeCount;
+        return index;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * A mutable pair of an item position and the offset of the item's top from the top of the view,
+ * so that lookups can be done without allocation.
+ */
+public class ItemOffset {
+
+    public int position;
+
+    public int offset;
+
+    public void set(int position, int offset) {
+        this.position = position;
+        this.offset = offset;
+    }
+}
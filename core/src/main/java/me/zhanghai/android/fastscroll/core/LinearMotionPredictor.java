@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * A motion predictor that fits a line to the recent samples of a position by least squares, and
+ * extrapolates it a short time into the future.
+ */
+public class LinearMotionPredictor {
+
+    private static final int MAX_SAMPLE_COUNT = 8;
+    private static final long MAX_SAMPLE_AGE_MILLIS = 50;
+    private static final long MAX_PREDICTION_MILLIS = 32;
+
+    private final long[] mSampleTimes = new long[MAX_SAMPLE_COUNT];
+    private final float[] mSamplePositions = new float[MAX_SAMPLE_COUNT];
+    private int mSampleStart;
+    private int mSampleCount;
+
+    public void reset() {
+        mSampleStart = 0;
+        mSampleCount = 0;
+    }
+
+    public void addSample(long timeMillis, float position) {
+        if (mSampleCount > 0) {
+            long lastTimeMillis = mSampleTimes[getIndex(mSampleCount - 1)];
+            if (timeMillis < lastTimeMillis) {
+                return;
+            }
+            if (timeMillis == lastTimeMillis) {
+                mSamplePositions[getIndex(mSampleCount - 1)] = position;
+                return;
+            }
+        }
+        if (mSampleCount == MAX_SAMPLE_COUNT) {
+            mSampleStart = (mSampleStart + 1) % MAX_SAMPLE_COUNT;
+            --mSampleCount;
+        }
+        int index = getIndex(mSampleCount);
+        mSampleTimes[index] = timeMillis;
+        mSamplePositions[index] = position;
+        ++mSampleCount;
+    }
+
+    /**
+     * @return the predicted position at the time, or the last position if there aren't enough
+     *         recent samples for a prediction
+     */
+    public float predict(long timeMillis) {
+        if (mSampleCount == 0) {
+            return 0;
+        }
+        int lastIndex = getIndex(mSampleCount - 1);
+        long lastTimeMillis = mSampleTimes[lastIndex];
+        float lastPosition = mSamplePositions[lastIndex];
+        // Least squares fit with time relative to the last sample.
+        int count = 0;
+        double sumT = 0;
+        double sumP = 0;
+        double sumTT = 0;
+        double sumTP = 0;
+        for (int i = mSampleCount - 1; i >= 0; --i) {
+            int index = getIndex(i);
+            long t = mSampleTimes[index] - lastTimeMillis;
+            if (-t > MAX_SAMPLE_AGE_MILLIS) {
+                break;
+            }
+            float p = mSamplePositions[index];
+            ++count;
+            sumT += t;
+            sumP += p;
+            sumTT += (double) t * t;
+            sumTP += t * p;
+        }
+        double denominator = count * sumTT - sumT * sumT;
+        if (count < 2 || denominator == 0) {
+            return lastPosition;
+        }
+        double velocity = (count * sumTP - sumT * sumP) / denominator;
+        long predictionMillis = Math.min(timeMillis - lastTimeMillis, MAX_PREDICTION_MILLIS);
+        if (predictionMillis <= 0) {
+            return lastPosition;
+        }
+        return (float) (lastPosition + velocity * predictionMillis);
+    }
+
+    private int getIndex(int i) {
+        return (mSampleStart + i) % MAX_SAMPLE_COUNT;
+    }
+}
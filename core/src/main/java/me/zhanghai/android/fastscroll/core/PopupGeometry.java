@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * Placement of the popup next to the thumb of a scrollbar.
+ */
+public class PopupGeometry {
+
+    private PopupGeometry() {}
+
+    public static int getPopupLeft(boolean isLayoutRtl, int viewWidth, int paddingLeft,
+                                   int paddingRight, int thumbWidth, int marginLeft,
+                                   int marginRight, int popupWidth) {
+        return isLayoutRtl ? paddingLeft + thumbWidth + marginLeft
+                : viewWidth - paddingRight - thumbWidth - marginRight - popupWidth;
+    }
+
+    /**
+     * @return the top of the popup so that its anchor lines up with the anchor on the thumb,
+     *         clamped to be inside the view.
+     */
+    public static int getPopupTop(int thumbTop, int thumbAnchorY, int popupAnchorY,
+                                  int viewHeight, int paddingTop, int paddingBottom,
+                                  int marginTop, int marginBottom, int popupHeight) {
+        return ScrollbarGeometry.clamp(thumbTop + thumbAnchorY - popupAnchorY,
+                paddingTop + marginTop, viewHeight - paddingBottom - marginBottom - popupHeight);
+    }
+}
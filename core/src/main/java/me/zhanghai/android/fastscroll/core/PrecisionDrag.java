@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * The thumb to content ratio for precision dragging, where moving the finger away from the track
+ * scrubs through the content more finely, and fast drags keep the linear mapping.
+ */
+public class PrecisionDrag {
+
+    private static final float[] BAND_SCALES = { 1, 0.5f, 0.25f, 0.1f };
+
+    private PrecisionDrag() {}
+
+    /**
+     * @param distanceFromTrack the horizontal distance of the finger from the track
+     * @param bandSize the width of each band of distance with the same scale
+     * @param velocity the speed of the drag
+     * @param fastVelocity the speed at and above which a drag is linear regardless of distance
+     * @return the scale to apply to the linear thumb to content ratio
+     */
+    public static float getScale(float distanceFromTrack, float bandSize, float velocity,
+                                 float fastVelocity) {
+        if (velocity >= fastVelocity) {
+            return 1;
+        }
+        int band = bandSize > 0 ? (int) (Math.max(0, distanceFromTrack) / bandSize) : 0;
+        return BAND_SCALES[Math.min(band, BAND_SCALES.length - 1)];
+    }
+
+    public static double getScrollOffsetDelta(float thumbOffsetDelta, int thumbOffsetRange,
+                                              int scrollOffsetRange, float scale) {
+        if (thumbOffsetRange <= 0) {
+            return 0;
+        }
+        return (double) thumbOffsetDelta * scrollOffsetRange / thumbOffsetRange * scale;
+    }
+}
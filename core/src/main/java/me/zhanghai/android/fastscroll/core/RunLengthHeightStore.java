@@ -0,0 +1,737 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A compact store of row heights, for computing exact scroll offsets of long lists where most rows
+ * share a handful of heights.
+ * <p>
+ * Rows are grouped into fixed size blocks, and each block stores its heights as runs of equal
+ * heights. Prefix sums over the blocks are kept in Fenwick trees, so that an offset query only
+ * takes {@code O(log n)} plus a scan of the runs in a single block. Rows whose heights haven't been
+ * set are {@link #UNKNOWN_HEIGHT}, and an estimated height for them is passed to each query.
+ * <p>
+ * When the runs held on the heap exceed a limit, the least recently modified blocks are spilled to
+ * a memory-mapped file and queried from there, so that only the small per-block bookkeeping stays
+ * on the heap.
+ */
+public class RunLengthHeightStore implements Closeable {
+
+    public static final int UNKNOWN_HEIGHT = -1;
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // A run is stored as a pair of its length and height.
+    private static final int RUN_INTS = 2;
+    private static final int RUN_BYTES = RUN_INTS * Integer.BYTES;
+    // Rough heap overhead of a resident block besides its runs.
+    private static final int BLOCK_OVERHEAD_BYTES = 64;
+
+    // Large enough for a block with a run for every row.
+    private static final int SPILL_SEGMENT_BYTES = 1 << 20;
+
+    private final long mMaxResidentBytes;
+    @Nullable
+    private final File mSpillDirectory;
+
+    private int mRowCount;
+    private int mBlockCount;
+    @NonNull
+    private Block[] mBlocks = new Block[0];
+    // Fenwick trees over blocks, of the sum of known heights and the count of unknown heights.
+    @NonNull
+    private long[] mKnownHeightTree = new long[1];
+    @NonNull
+    private int[] mUnknownCountTree = new int[1];
+
+    // Resident blocks, from the least recently modified one.
+    @Nullable
+    private Block mLruHead;
+    @Nullable
+    private Block mLruTail;
+    private long mResidentBytes;
+
+    @Nullable
+    private File mSpillFile;
+    @Nullable
+    private RandomAccessFile mSpillRandomAccessFile;
+    @NonNull
+    private final ArrayList<MappedByteBuffer> mSpillSegments = new ArrayList<>();
+    private int mSpillSegmentIndex;
+    private int mSpillSegmentPosition;
+    private boolean mSpillFailed;
+
+    @NonNull
+    private int[] mTempRuns = new int[RUN_INTS * 4];
+
+    /**
+     * @param maxResidentBytes the limit of heap used by runs before blocks are spilled
+     * @param spillDirectory the directory for the spill file, e.g. the app cache directory, or
+     *                       {@code null} to never spill
+     */
+    public RunLengthHeightStore(long maxResidentBytes, @Nullable File spillDirectory) {
+        mMaxResidentBytes = maxResidentBytes;
+        mSpillDirectory = spillDirectory;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Set the row count, keeping the existing heights if rows are only added at the end. Otherwise
+     * all heights are discarded.
+     */
+    public void setRowCount(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount < 0");
+        }
+        if (rowCount == mRowCount) {
+            return;
+        }
+        if (rowCount < mRowCount) {
+            clear(rowCount);
+            return;
+        }
+        int oldRowCount = mRowCount;
+        int oldBlockCount = mBlockCount;
+        mRowCount = rowCount;
+        mBlockCount = getBlockCount(rowCount);
+        if (mBlockCount > mBlocks.length) {
+            mBlocks = Arrays.copyOf(mBlocks, Math.max(mBlockCount, 2 * mBlocks.length));
+        }
+        if (oldBlockCount > 0) {
+            int lastBlockIndex = oldBlockCount - 1;
+            Block lastBlock = mBlocks[lastBlockIndex];
+            int oldRowsInLastBlock = oldRowCount - (lastBlockIndex << BLOCK_SHIFT);
+            int addedRowsInLastBlock = getRowsInBlock(lastBlockIndex) - oldRowsInLastBlock;
+            if (lastBlock != null && addedRowsInLastBlock > 0) {
+                loadBlock(lastBlock);
+                ensureRunCapacity(lastBlock, lastBlock.runCount + 1);
+                int[] runs = lastBlock.runs;
+                int lastRun = lastBlock.runCount - 1;
+                if (runs[RUN_INTS * lastRun + 1] == UNKNOWN_HEIGHT) {
+                    runs[RUN_INTS * lastRun] += addedRowsInLastBlock;
+                } else {
+                    runs[RUN_INTS * lastBlock.runCount] = addedRowsInLastBlock;
+                    runs[RUN_INTS * lastBlock.runCount + 1] = UNKNOWN_HEIGHT;
+                    ++lastBlock.runCount;
+                }
+                lastBlock.unknownCount += addedRowsInLastBlock;
+                trimResidentBlocks(lastBlock);
+            }
+        }
+        rebuildTrees();
+    }
+
+    /**
+     * Discard the heights from the row on and set the row count to it, e.g. when items have been
+     * inserted or removed there. The heights before the row are kept.
+     */
+    public void truncate(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount < 0");
+        }
+        if (rowCount >= mRowCount) {
+            return;
+        }
+        int blockCount = getBlockCount(rowCount);
+        // The spill space of discarded blocks is only reused after a clear.
+        for (int i = blockCount; i < mBlockCount; ++i) {
+            Block block = mBlocks[i];
+            if (block != null && block.runs != null) {
+                removeResidentBlock(block);
+            }
+            mBlocks[i] = null;
+        }
+        if (blockCount > 0) {
+            Block lastBlock = mBlocks[blockCount - 1];
+            if (lastBlock != null) {
+                loadBlock(lastBlock);
+                touchResidentBlock(lastBlock);
+                truncateBlock(lastBlock, rowCount - ((blockCount - 1) << BLOCK_SHIFT));
+            }
+        }
+        mRowCount = rowCount;
+        mBlockCount = blockCount;
+        rebuildTrees();
+    }
+
+    /**
+     * Discard all heights and set the row count.
+     */
+    public void clear(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount < 0");
+        }
+        mRowCount = rowCount;
+        mBlockCount = getBlockCount(rowCount);
+        mBlocks = new Block[mBlockCount];
+        mLruHead = null;
+        mLruTail = null;
+        mResidentBytes = 0;
+        // Reuse the spill file from the beginning.
+        mSpillSegmentIndex = 0;
+        mSpillSegmentPosition = 0;
+        rebuildTrees();
+    }
+
+    public int getHeight(int row) {
+        checkRow(row);
+        Block block = mBlocks[row >> BLOCK_SHIFT];
+        if (block == null) {
+            return UNKNOWN_HEIGHT;
+        }
+        int indexInBlock = row & BLOCK_MASK;
+        int runStart = 0;
+        for (int run = 0; ; ++run) {
+            runStart += getRunLength(block, run);
+            if (indexInBlock < runStart) {
+                return getRunHeight(block, run);
+            }
+        }
+    }
+
+    public void setHeight(int row, int height) {
+        checkRow(row);
+        if (height < 0 && height != UNKNOWN_HEIGHT) {
+            throw new IllegalArgumentException("height < 0");
+        }
+        int blockIndex = row >> BLOCK_SHIFT;
+        Block block = mBlocks[blockIndex];
+        if (block == null) {
+            if (height == UNKNOWN_HEIGHT) {
+                return;
+            }
+            block = new Block();
+            int rowsInBlock = getRowsInBlock(blockIndex);
+            block.runs = new int[RUN_INTS * 4];
+            block.runs[0] = rowsInBlock;
+            block.runs[1] = UNKNOWN_HEIGHT;
+            block.runCount = 1;
+            block.unknownCount = rowsInBlock;
+            mBlocks[blockIndex] = block;
+            addResidentBlock(block);
+        } else {
+            loadBlock(block);
+            touchResidentBlock(block);
+        }
+        long oldKnownHeightSum = block.knownHeightSum;
+        int oldUnknownCount = block.unknownCount;
+        if (!setHeightInBlock(block, row & BLOCK_MASK, height)) {
+            return;
+        }
+        updateTrees(blockIndex, block.knownHeightSum - oldKnownHeightSum,
+                block.unknownCount - oldUnknownCount);
+        trimResidentBlocks(block);
+    }
+
+    /**
+     * @return the offset of the top of the row, which may also be the row count for the total
+     *         height
+     */
+    public long getOffset(int row, int unknownHeight) {
+        if (row < 0 || row > mRowCount) {
+            throw new IndexOutOfBoundsException("row " + row + ", row count " + mRowCount);
+        }
+        int blockIndex = row >> BLOCK_SHIFT;
+        long offset = getBlocksHeight(blockIndex, unknownHeight);
+        if (blockIndex == mBlockCount) {
+            return offset;
+        }
+        int rowsBeforeInBlock = row & BLOCK_MASK;
+        Block block = mBlocks[blockIndex];
+        if (block == null) {
+            return offset + (long) rowsBeforeInBlock * unknownHeight;
+        }
+        for (int run = 0; rowsBeforeInBlock > 0; ++run) {
+            int runLength = Math.min(getRunLength(block, run), rowsBeforeInBlock);
+            offset += (long) runLength * getHeightOrUnknown(getRunHeight(block, run),
+                    unknownHeight);
+            rowsBeforeInBlock -= runLength;
+        }
+        return offset;
+    }
+
+    public long getTotalHeight(int unknownHeight) {
+        return getBlocksHeight(mBlockCount, unknownHeight);
+    }
+
+    /**
+     * Find the row at the offset, i.e. the row that should be the first one when the content is
+     * scrolled to the offset.
+     *
+     * @param outRowOffset receives the row, and the offset of its top from the offset
+     */
+    public void findRow(long offset, int unknownHeight, @NonNull ItemOffset outRowOffset) {
+        if (mRowCount == 0 || offset <= 0) {
+            outRowOffset.set(0, (int) -Math.max(offset, Integer.MIN_VALUE + 1));
+            return;
+        }
+        // Descend the Fenwick trees for the number of whole blocks above the offset.
+        int blockIndex = 0;
+        long remaining = offset;
+        for (int step = Integer.highestOneBit(mBlockCount); step > 0; step >>= 1) {
+            int nextBlockIndex = blockIndex + step;
+            if (nextBlockIndex > mBlockCount) {
+                continue;
+            }
+            long height = mKnownHeightTree[nextBlockIndex]
+                    + (long) mUnknownCountTree[nextBlockIndex] * unknownHeight;
+            if (height <= remaining) {
+                blockIndex = nextBlockIndex;
+                remaining -= height;
+            }
+        }
+        if (blockIndex == mBlockCount) {
+            int lastRow = mRowCount - 1;
+            outRowOffset.set(lastRow, (int) Math.max(getOffset(lastRow, unknownHeight) - offset,
+                    Integer.MIN_VALUE));
+            return;
+        }
+        int row = blockIndex << BLOCK_SHIFT;
+        Block block = mBlocks[blockIndex];
+        int runCount = block != null ? block.runCount : 1;
+        for (int run = 0; run < runCount; ++run) {
+            int runLength = block != null ? getRunLength(block, run) : getRowsInBlock(blockIndex);
+            int height = getHeightOrUnknown(block != null ? getRunHeight(block, run)
+                    : UNKNOWN_HEIGHT, unknownHeight);
+            long runHeight = (long) runLength * height;
+            if (remaining < runHeight) {
+                int rowsBefore = (int) (remaining / height);
+                outRowOffset.set(row + rowsBefore, (int) -(remaining - (long) rowsBefore * height));
+                return;
+            }
+            remaining -= runHeight;
+            row += runLength;
+        }
+        // Only zero height rows are left in the block.
+        outRowOffset.set(Math.min(row, mRowCount - 1), 0);
+    }
+
+    /**
+     * Write the row count and heights in a compact binary format.
+     */
+    public void writeTo(@NonNull DataOutputStream output) throws IOException {
+        VarInts.writeVarInt(output, mRowCount);
+        for (int blockIndex = 0; blockIndex < mBlockCount; ++blockIndex) {
+            Block block = mBlocks[blockIndex];
+            if (block == null) {
+                VarInts.writeVarInt(output, 0);
+                continue;
+            }
+            int runCount = block.runCount;
+            VarInts.writeVarInt(output, runCount);
+            for (int run = 0; run < runCount; ++run) {
+                VarInts.writeVarInt(output, getRunLength(block, run));
+                // UNKNOWN_HEIGHT becomes 0.
+                VarInts.writeVarInt(output, getRunHeight(block, run) + 1);
+            }
+        }
+    }
+
+    /**
+     * Replace the row count and heights with those written by
+     * {@link #writeTo(DataOutputStream)}. Blocks are spilled while reading as needed.
+     */
+    public void readFrom(@NonNull DataInputStream input) throws IOException {
+        int rowCount = VarInts.readVarInt(input);
+        if (rowCount < 0) {
+            throw new IOException("Malformed row count " + rowCount);
+        }
+        clear(rowCount);
+        try {
+            for (int blockIndex = 0; blockIndex < mBlockCount; ++blockIndex) {
+                int runCount = VarInts.readVarInt(input);
+                if (runCount == 0) {
+                    continue;
+                }
+                int rowsInBlock = getRowsInBlock(blockIndex);
+                if (runCount < 0 || runCount > rowsInBlock) {
+                    throw new IOException("Malformed run count " + runCount);
+                }
+                Block block = new Block();
+                block.runs = new int[RUN_INTS * runCount];
+                int rows = 0;
+                for (int run = 0; run < runCount; ++run) {
+                    int runLength = VarInts.readVarInt(input);
+                    int runHeight = VarInts.readVarInt(input) - 1;
+                    if (runLength <= 0 || runLength > rowsInBlock - rows
+                            || runHeight < UNKNOWN_HEIGHT) {
+                        throw new IOException("Malformed run in block " + blockIndex);
+                    }
+                    block.runs[RUN_INTS * run] = runLength;
+                    block.runs[RUN_INTS * run + 1] = runHeight;
+                    if (runHeight == UNKNOWN_HEIGHT) {
+                        block.unknownCount += runLength;
+                    } else {
+                        block.knownHeightSum += (long) runLength * runHeight;
+                    }
+                    rows += runLength;
+                }
+                if (rows != rowsInBlock) {
+                    throw new IOException("Malformed row count in block " + blockIndex);
+                }
+                block.runCount = runCount;
+                mBlocks[blockIndex] = block;
+                addResidentBlock(block);
+                trimResidentBlocks(block);
+            }
+        } catch (IOException e) {
+            clear(0);
+            throw e;
+        }
+        rebuildTrees();
+    }
+
+    /**
+     * @return the approximate heap used by the runs of resident blocks
+     */
+    public long getResidentBytes() {
+        return mResidentBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear(0);
+        mSpillSegments.clear();
+        if (mSpillRandomAccessFile != null) {
+            mSpillRandomAccessFile.close();
+            mSpillRandomAccessFile = null;
+        }
+        if (mSpillFile != null) {
+            //noinspection ResultOfMethodCallIgnored
+            mSpillFile.delete();
+            mSpillFile = null;
+        }
+    }
+
+    private static int getBlockCount(int rowCount) {
+        return (rowCount + BLOCK_MASK) >> BLOCK_SHIFT;
+    }
+
+    private int getRowsInBlock(int blockIndex) {
+        return Math.min(BLOCK_SIZE, mRowCount - (blockIndex << BLOCK_SHIFT));
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= mRowCount) {
+            throw new IndexOutOfBoundsException("row " + row + ", row count " + mRowCount);
+        }
+    }
+
+    private static int getHeightOrUnknown(int height, int unknownHeight) {
+        return height != UNKNOWN_HEIGHT ? height : unknownHeight;
+    }
+
+    private int getRunLength(@NonNull Block block, int run) {
+        if (block.runs != null) {
+            return block.runs[RUN_INTS * run];
+        }
+        return mSpillSegments.get(block.spillSegmentIndex).getInt(block.spillPosition
+                + RUN_BYTES * run);
+    }
+
+    private int getRunHeight(@NonNull Block block, int run) {
+        if (block.runs != null) {
+            return block.runs[RUN_INTS * run + 1];
+        }
+        return mSpillSegments.get(block.spillSegmentIndex).getInt(block.spillPosition
+                + RUN_BYTES * run + Integer.BYTES);
+    }
+
+    /**
+     * @return whether the height was changed
+     */
+    private boolean setHeightInBlock(@NonNull Block block, int indexInBlock, int height) {
+        int[] runs = block.runs;
+        int runCount = block.runCount;
+        int run = 0;
+        int runStart = 0;
+        while (runStart + runs[RUN_INTS * run] <= indexInBlock) {
+            runStart += runs[RUN_INTS * run];
+            ++run;
+        }
+        int runLength = runs[RUN_INTS * run];
+        int runHeight = runs[RUN_INTS * run + 1];
+        if (runHeight == height) {
+            return false;
+        }
+        if (runHeight == UNKNOWN_HEIGHT) {
+            --block.unknownCount;
+        } else {
+            block.knownHeightSum -= runHeight;
+        }
+        if (height == UNKNOWN_HEIGHT) {
+            ++block.unknownCount;
+        } else {
+            block.knownHeightSum += height;
+        }
+        // Rebuild the runs, splitting the run and merging with neighbors of the same height.
+        int maxTempRunCount = runCount + 2;
+        if (mTempRuns.length < RUN_INTS * maxTempRunCount) {
+            mTempRuns = new int[RUN_INTS * maxTempRunCount];
+        }
+        int[] tempRuns = mTempRuns;
+        int tempRunCount = 0;
+        for (int i = 0; i < runCount; ++i) {
+            if (i != run) {
+                tempRunCount = appendRun(tempRuns, tempRunCount, runs[RUN_INTS * i],
+                        runs[RUN_INTS * i + 1]);
+                continue;
+            }
+            tempRunCount = appendRun(tempRuns, tempRunCount, indexInBlock - runStart, runHeight);
+            tempRunCount = appendRun(tempRuns, tempRunCount, 1, height);
+            tempRunCount = appendRun(tempRuns, tempRunCount,
+                    runStart + runLength - indexInBlock - 1, runHeight);
+        }
+        ensureRunCapacity(block, tempRunCount);
+        System.arraycopy(tempRuns, 0, block.runs, 0, RUN_INTS * tempRunCount);
+        block.runCount = tempRunCount;
+        return true;
+    }
+
+    private static void truncateBlock(@NonNull Block block, int rowCount) {
+        int[] runs = block.runs;
+        int runCount = 0;
+        int runStart = 0;
+        long knownHeightSum = 0;
+        int unknownCount = 0;
+        while (runStart < rowCount) {
+            int length = Math.min(runs[RUN_INTS * runCount], rowCount - runStart);
+            int height = runs[RUN_INTS * runCount + 1];
+            runs[RUN_INTS * runCount] = length;
+            if (height == UNKNOWN_HEIGHT) {
+                unknownCount += length;
+            } else {
+                knownHeightSum += (long) length * height;
+            }
+            runStart += length;
+            ++runCount;
+        }
+        block.runCount = runCount;
+        block.knownHeightSum = knownHeightSum;
+        block.unknownCount = unknownCount;
+    }
+
+    private static int appendRun(@NonNull int[] runs, int runCount, int length, int height) {
+        if (length == 0) {
+            return runCount;
+        }
+        if (runCount > 0 && runs[RUN_INTS * (runCount - 1) + 1] == height) {
+            runs[RUN_INTS * (runCount - 1)] += length;
+            return runCount;
+        }
+        runs[RUN_INTS * runCount] = length;
+        runs[RUN_INTS * runCount + 1] = height;
+        return runCount + 1;
+    }
+
+    private void ensureRunCapacity(@NonNull Block block, int runCount) {
+        int[] runs = block.runs;
+        if (runs.length >= RUN_INTS * runCount) {
+            return;
+        }
+        int[] newRuns = Arrays.copyOf(runs, Math.max(RUN_INTS * runCount, 2 * runs.length));
+        mResidentBytes += (long) (newRuns.length - runs.length) * Integer.BYTES;
+        block.runs = newRuns;
+    }
+
+    private long getBlocksHeight(int blockCount, int unknownHeight) {
+        long knownHeight = 0;
+        long unknownCount = 0;
+        for (int i = blockCount; i > 0; i -= i & -i) {
+            knownHeight += mKnownHeightTree[i];
+            unknownCount += mUnknownCountTree[i];
+        }
+        return knownHeight + unknownCount * unknownHeight;
+    }
+
+    private void updateTrees(int blockIndex, long knownHeightDelta, int unknownCountDelta) {
+        for (int i = blockIndex + 1; i <= mBlockCount; i += i & -i) {
+            mKnownHeightTree[i] += knownHeightDelta;
+            mUnknownCountTree[i] += unknownCountDelta;
+        }
+    }
+
+    private void rebuildTrees() {
+        mKnownHeightTree = new long[mBlockCount + 1];
+        mUnknownCountTree = new int[mBlockCount + 1];
+        for (int i = 1; i <= mBlockCount; ++i) {
+            Block block = mBlocks[i - 1];
+            if (block != null) {
+                mKnownHeightTree[i] += block.knownHeightSum;
+                mUnknownCountTree[i] += block.unknownCount;
+            } else {
+                mUnknownCountTree[i] += getRowsInBlock(i - 1);
+            }
+            int parent = i + (i & -i);
+            if (parent <= mBlockCount) {
+                mKnownHeightTree[parent] += mKnownHeightTree[i];
+                mUnknownCountTree[parent] += mUnknownCountTree[i];
+            }
+        }
+    }
+
+    private static long getResidentBytes(@NonNull Block block) {
+        return BLOCK_OVERHEAD_BYTES + (long) block.runs.length * Integer.BYTES;
+    }
+
+    private void addResidentBlock(@NonNull Block block) {
+        mResidentBytes += getResidentBytes(block);
+        block.lruPrevious = mLruTail;
+        block.lruNext = null;
+        if (mLruTail != null) {
+            mLruTail.lruNext = block;
+        } else {
+            mLruHead = block;
+        }
+        mLruTail = block;
+    }
+
+    private void removeResidentBlock(@NonNull Block block) {
+        mResidentBytes -= getResidentBytes(block);
+        if (block.lruPrevious != null) {
+            block.lruPrevious.lruNext = block.lruNext;
+        } else {
+            mLruHead = block.lruNext;
+        }
+        if (block.lruNext != null) {
+            block.lruNext.lruPrevious = block.lruPrevious;
+        } else {
+            mLruTail = block.lruPrevious;
+        }
+        block.lruPrevious = null;
+        block.lruNext = null;
+    }
+
+    private void touchResidentBlock(@NonNull Block block) {
+        if (mLruTail == block) {
+            return;
+        }
+        removeResidentBlock(block);
+        addResidentBlock(block);
+    }
+
+    private void loadBlock(@NonNull Block block) {
+        if (block.runs != null) {
+            return;
+        }
+        int[] runs = new int[Math.max(RUN_INTS * block.runCount, RUN_INTS * 4)];
+        MappedByteBuffer segment = mSpillSegments.get(block.spillSegmentIndex);
+        for (int i = 0, count = RUN_INTS * block.runCount; i < count; ++i) {
+            runs[i] = segment.getInt(block.spillPosition + Integer.BYTES * i);
+        }
+        block.runs = runs;
+        addResidentBlock(block);
+    }
+
+    private void trimResidentBlocks(@NonNull Block keptBlock) {
+        while (mResidentBytes > mMaxResidentBytes && !mSpillFailed) {
+            Block block = mLruHead;
+            if (block == null || block == keptBlock) {
+                return;
+            }
+            if (!spillBlock(block)) {
+                return;
+            }
+        }
+    }
+
+    private boolean spillBlock(@NonNull Block block) {
+        int bytes = RUN_BYTES * block.runCount;
+        // Reuse the previous space of the block if it still fits.
+        if (block.spillSegmentIndex == -1 || block.spillCapacity < block.runCount) {
+            if (mSpillSegmentPosition + bytes > SPILL_SEGMENT_BYTES || mSpillSegments.isEmpty()) {
+                int segmentIndex = mSpillSegments.isEmpty() ? 0 : mSpillSegmentIndex + 1;
+                try {
+                    ensureSpillSegment(segmentIndex);
+                } catch (IOException e) {
+                    // Keep everything on the heap if we can't spill, which is still correct.
+                    mSpillFailed = true;
+                    return false;
+                }
+                mSpillSegmentIndex = segmentIndex;
+                mSpillSegmentPosition = 0;
+            }
+            block.spillSegmentIndex = mSpillSegmentIndex;
+            block.spillPosition = mSpillSegmentPosition;
+            block.spillCapacity = block.runCount;
+            mSpillSegmentPosition += bytes;
+        }
+        MappedByteBuffer segment = mSpillSegments.get(block.spillSegmentIndex);
+        int[] runs = block.runs;
+        for (int i = 0, count = RUN_INTS * block.runCount; i < count; ++i) {
+            segment.putInt(block.spillPosition + Integer.BYTES * i, runs[i]);
+        }
+        removeResidentBlock(block);
+        block.runs = null;
+        return true;
+    }
+
+    private void ensureSpillSegment(int segmentIndex) throws IOException {
+        if (segmentIndex < mSpillSegments.size()) {
+            return;
+        }
+        if (mSpillDirectory == null) {
+            throw new IOException("No spill directory");
+        }
+        if (mSpillRandomAccessFile == null) {
+            mSpillFile = File.createTempFile("heights", ".bin", mSpillDirectory);
+            mSpillFile.deleteOnExit();
+            mSpillRandomAccessFile = new RandomAccessFile(mSpillFile, "rw");
+        }
+        mSpillSegments.add(mSpillRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                (long) segmentIndex * SPILL_SEGMENT_BYTES, SPILL_SEGMENT_BYTES));
+    }
+
+    private static class Block {
+
+        // Null when spilled.
+        @Nullable
+        public int[] runs;
+        public int runCount;
+
+        public int spillSegmentIndex = -1;
+        public int spillPosition;
+        public int spillCapacity;
+
+        public long knownHeightSum;
+        public int unknownCount;
+
+        @Nullable
+        public Block lruPrevious;
+        @Nullable
+        public Block lruNext;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A clock and a way to run code after a delay, so that timing can be driven by something other
+ * than the wall clock, e.g. {@link VirtualScheduler}.
+ */
+public interface Scheduler {
+
+    long uptimeMillis();
+
+    void postDelayed(@NonNull Runnable runnable, long delayMillis);
+
+    void removeCallbacks(@NonNull Runnable runnable);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * Mapping between the thumb of a scrollbar and the scroll offset of the content, and hit testing
+ * for touch targets.
+ */
+public class ScrollbarGeometry {
+
+    private ScrollbarGeometry() {}
+
+    public static int getScrollOffsetRange(int scrollRange, int viewHeight) {
+        return scrollRange - viewHeight;
+    }
+
+    public static int getThumbOffsetRange(int viewHeight, int paddingTop, int paddingBottom,
+                                          int thumbHeight) {
+        return viewHeight - paddingTop - paddingBottom - thumbHeight;
+    }
+
+    public static int getThumbOffset(int scrollOffset, int scrollOffsetRange,
+                                     int thumbOffsetRange) {
+        if (scrollOffsetRange <= 0) {
+            return 0;
+        }
+        return (int) ((long) thumbOffsetRange * scrollOffset / scrollOffsetRange);
+    }
+
+    /**
+     * @return the scroll offset for the thumb offset, which is clamped to
+     *         {@code [0, thumbOffsetRange]} first.
+     */
+    public static int getScrollOffset(int thumbOffset, int thumbOffsetRange,
+                                      int scrollOffsetRange) {
+        thumbOffset = clamp(thumbOffset, 0, thumbOffsetRange);
+        return (int) ((long) scrollOffsetRange * thumbOffset / thumbOffsetRange);
+    }
+
+    /**
+     * @return whether the position is inside the touch target for a view, which is expanded to
+     *         {@code minTouchTargetSize} and then kept within the parent when necessary.
+     */
+    public static boolean isInTouchTarget(float position, int viewStart, int viewEnd,
+                                          int parentStart, int parentEnd,
+                                          int minTouchTargetSize) {
+        int viewSize = viewEnd - viewStart;
+        if (viewSize >= minTouchTargetSize) {
+            return position >= viewStart && position < viewEnd;
+        }
+        int touchTargetStart = viewStart - (minTouchTargetSize - viewSize) / 2;
+        if (touchTargetStart < parentStart) {
+            touchTargetStart = parentStart;
+        }
+        int touchTargetEnd = touchTargetStart + minTouchTargetSize;
+        if (touchTargetEnd > parentEnd) {
+            touchTargetEnd = parentEnd;
+            touchTargetStart = touchTargetEnd - minTouchTargetSize;
+            if (touchTargetStart < parentStart) {
+                touchTargetStart = parentStart;
+            }
+        }
+        return position >= touchTargetStart && position < touchTargetEnd;
+    }
+
+    // @see androidx.core.math.MathUtils#clamp(int, int, int)
+    static int clamp(int value, int min, int max) {
+        if (value < min) {
+            return min;
+        } else if (value > max) {
+            return max;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An index of the rows in a grid where items may span multiple columns, e.g. full width headers,
+ * for mapping a position to its row in {@code O(log n)} and a row to its first position in
+ * {@code O(1)}.
+ * <p>
+ * Items are grouped into rows the same way as {@code GridLayoutManager}, i.e. an item starts a new
+ * row when it doesn't fit in the remaining spans of the current row.
+ */
+public class SpanRowIndex {
+
+    private int mSpanCount;
+    private int mItemCount;
+
+    @NonNull
+    private int[] mRowStarts = new int[16];
+    private int mRowCount;
+    private int mLastRowSpans;
+
+    public int getSpanCount() {
+        return mSpanCount;
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public void rebuild(int itemCount, int spanCount, @NonNull SpanSizes spanSizes) {
+        mSpanCount = spanCount;
+        mItemCount = 0;
+        mRowCount = 0;
+        // Make the first item start a new row.
+        mLastRowSpans = spanCount;
+        append(itemCount, spanSizes);
+    }
+
+    /**
+     * Index the items appended after the current item count.
+     */
+    public void append(int itemCount, @NonNull SpanSizes spanSizes) {
+        for (int position = mItemCount; position < itemCount; ++position) {
+            int spanSize = Math.max(1, Math.min(spanSizes.getSpanSize(position), mSpanCount));
+            if (mLastRowSpans + spanSize > mSpanCount) {
+                if (mRowCount == mRowStarts.length) {
+                    mRowStarts = Arrays.copyOf(mRowStarts, 2 * mRowStarts.length);
+                }
+                mRowStarts[mRowCount] = position;
+                ++mRowCount;
+                mLastRowSpans = spanSize;
+            } else {
+                mLastRowSpans += spanSize;
+            }
+        }
+        mItemCount = Math.max(mItemCount, itemCount);
+    }
+
+    /**
+     * Discard the rows from the one containing the position on, e.g. when items have been inserted
+     * or removed there, so that they can be appended again.
+     */
+    public void truncate(int position) {
+        if (position >= mItemCount) {
+            return;
+        }
+        int row = position > 0 ? getRow(position) : 0;
+        mItemCount = getFirstPositionInRow(row);
+        mRowCount = row;
+        // Make the next item start a new row.
+        mLastRowSpans = mSpanCount;
+    }
+
+    public int getRow(int position) {
+        int index = Arrays.binarySearch(mRowStarts, 0, mRowCount, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return the first position in the row, or the item count if the row is the row count
+     */
+    public int getFirstPositionInRow(int row) {
+        return row < mRowCount ? mRowStarts[row] : mItemCount;
+    }
+
+    public interface SpanSizes {
+
+        int getSpanSize(int position);
+    }
+}
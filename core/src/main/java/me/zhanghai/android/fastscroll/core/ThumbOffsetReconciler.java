@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+/**
+ * Reconciles the thumb offset when the scroll range estimate changes, so that the thumb doesn't
+ * jump.
+ * <p>
+ * When the estimate changes, the thumb is kept where it was, and the difference from the exact
+ * thumb offset is spread over the subsequent scrolling in proportion to the distance left to the
+ * end in that direction. This way the thumb keeps moving monotonically with the content, and
+ * becomes exact again at both ends.
+ */
+public class ThumbOffsetReconciler {
+
+    private boolean mHasThumbOffset;
+    private int mScrollOffsetRange;
+    private int mThumbOffsetRange;
+    private int mExactThumbOffset;
+    private double mCorrection;
+
+    public void reset() {
+        mHasThumbOffset = false;
+        mCorrection = 0;
+    }
+
+    /**
+     * Only the part of the change in the exact thumb offset that is caused by a change in the
+     * scroll offset range is absorbed, i.e. the difference between the thumb offsets for the same
+     * scroll offset with the last and the current range, so that the thumb keeps following the
+     * scrolling even when the range changes on every frame.
+     *
+     * @return the thumb offset to display
+     */
+    public int reconcile(int scrollOffset, int scrollOffsetRange, int thumbOffsetRange) {
+        int exactThumbOffset = ScrollbarGeometry.getThumbOffset(scrollOffset, scrollOffsetRange,
+                thumbOffsetRange);
+        if (!mHasThumbOffset || thumbOffsetRange != mThumbOffsetRange) {
+            mHasThumbOffset = true;
+            mScrollOffsetRange = scrollOffsetRange;
+            mThumbOffsetRange = thumbOffsetRange;
+            mExactThumbOffset = exactThumbOffset;
+            mCorrection = 0;
+            return exactThumbOffset;
+        }
+        int lastExactThumbOffset = mExactThumbOffset;
+        // Where the thumb would be for the new scroll offset if the range hadn't changed.
+        int scrolledThumbOffset = ScrollbarGeometry.getThumbOffset(scrollOffset,
+                mScrollOffsetRange, thumbOffsetRange);
+        mScrollOffsetRange = scrollOffsetRange;
+        mExactThumbOffset = exactThumbOffset;
+        if (exactThumbOffset <= 0 || exactThumbOffset >= thumbOffsetRange) {
+            mCorrection = 0;
+            return exactThumbOffset;
+        }
+        // Spread the correction over the scrolling in proportion to the distance left to the end.
+        if (scrolledThumbOffset > lastExactThumbOffset && lastExactThumbOffset < thumbOffsetRange) {
+            mCorrection = mCorrection * Math.max(0, thumbOffsetRange - scrolledThumbOffset)
+                    / (thumbOffsetRange - lastExactThumbOffset);
+        } else if (scrolledThumbOffset < lastExactThumbOffset && lastExactThumbOffset > 0) {
+            mCorrection = mCorrection * Math.max(0, scrolledThumbOffset) / lastExactThumbOffset;
+        }
+        mCorrection += scrolledThumbOffset - exactThumbOffset;
+        // Keep the thumb within the track.
+        mCorrection = Math.max(-exactThumbOffset, Math.min(mCorrection,
+                thumbOffsetRange - exactThumbOffset));
+        return (int) Math.round(exactThumbOffset + mCorrection);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A recorded stream of single pointer touch events, each with one or more samples where all but
+ * the last one are the historical samples batched into the event.
+ * <p>
+ * The compact file format stores sample times as millisecond deltas and positions as deltas in
+ * 1/16 pixels, all in variable length integers, so a typical drag takes a few bytes per sample.
+ */
+public class TouchTrace {
+
+    // Same as the corresponding MotionEvent actions.
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+
+    private static final int MAGIC = 0x41465354; // "AFST"
+    private static final int VERSION = 1;
+
+    private static final float POSITION_SCALE = 16;
+
+    private int mEventCount;
+    @NonNull
+    private int[] mActions = new int[16];
+    @NonNull
+    private int[] mSampleEnds = new int[16];
+
+    private int mSampleCount;
+    @NonNull
+    private long[] mSampleTimes = new long[64];
+    @NonNull
+    private float[] mSampleXs = new float[64];
+    @NonNull
+    private float[] mSampleYs = new float[64];
+
+    /**
+     * Start a new event, whose samples should then be added with
+     * {@link #addSample(long, float, float)}.
+     */
+    public void startEvent(int action) {
+        if (mEventCount == mActions.length) {
+            int capacity = mEventCount * 2;
+            mActions = Arrays.copyOf(mActions, capacity);
+            mSampleEnds = Arrays.copyOf(mSampleEnds, capacity);
+        }
+        mActions[mEventCount] = action;
+        mSampleEnds[mEventCount] = mSampleCount;
+        ++mEventCount;
+    }
+
+    public void addSample(long timeMillis, float x, float y) {
+        if (mEventCount == 0) {
+            throw new IllegalStateException("No event started");
+        }
+        if (mSampleCount == mSampleTimes.length) {
+            int capacity = mSampleCount * 2;
+            mSampleTimes = Arrays.copyOf(mSampleTimes, capacity);
+            mSampleXs = Arrays.copyOf(mSampleXs, capacity);
+            mSampleYs = Arrays.copyOf(mSampleYs, capacity);
+        }
+        mSampleTimes[mSampleCount] = timeMillis;
+        mSampleXs[mSampleCount] = x;
+        mSampleYs[mSampleCount] = y;
+        ++mSampleCount;
+        mSampleEnds[mEventCount - 1] = mSampleCount;
+    }
+
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    public int getAction(int event) {
+        return mActions[event];
+    }
+
+    public int getSampleStart(int event) {
+        return event > 0 ? mSampleEnds[event - 1] : 0;
+    }
+
+    public int getSampleEnd(int event) {
+        return mSampleEnds[event];
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getSampleTime(int sample) {
+        return mSampleTimes[sample];
+    }
+
+    public float getSampleX(int sample) {
+        return mSampleXs[sample];
+    }
+
+    public float getSampleY(int sample) {
+        return mSampleYs[sample];
+    }
+
+    public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        VarInts.writeVarInt(output, mEventCount);
+        long lastTime = mSampleCount > 0 ? mSampleTimes[0] : 0;
+        output.writeLong(lastTime);
+        int lastX = 0;
+        int lastY = 0;
+        for (int event = 0; event < mEventCount; ++event) {
+            output.writeByte(mActions[event]);
+            int sampleStart = getSampleStart(event);
+            int sampleEnd = getSampleEnd(event);
+            VarInts.writeVarInt(output, sampleEnd - sampleStart);
+            for (int sample = sampleStart; sample < sampleEnd; ++sample) {
+                long time = mSampleTimes[sample];
+                VarInts.writeVarLong(output, time - lastTime);
+                lastTime = time;
+                int x = Math.round(mSampleXs[sample] * POSITION_SCALE);
+                VarInts.writeVarInt(output, VarInts.zigZag(x - lastX));
+                lastX = x;
+                int y = Math.round(mSampleYs[sample] * POSITION_SCALE);
+                VarInts.writeVarInt(output, VarInts.zigZag(y - lastY));
+                lastY = y;
+            }
+        }
+        output.flush();
+    }
+
+    @NonNull
+    public static TouchTrace readFrom(@NonNull InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a touch trace");
+        }
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported touch trace version " + version);
+        }
+        TouchTrace trace = new TouchTrace();
+        int eventCount = VarInts.readVarInt(input);
+        long lastTime = input.readLong();
+        int lastX = 0;
+        int lastY = 0;
+        for (int event = 0; event < eventCount; ++event) {
+            trace.startEvent(input.readUnsignedByte());
+            int sampleCount = VarInts.readVarInt(input);
+            for (int sample = 0; sample < sampleCount; ++sample) {
+                lastTime += VarInts.readVarLong(input);
+                lastX += VarInts.unZigZag(VarInts.readVarInt(input));
+                lastY += VarInts.unZigZag(VarInts.readVarInt(input));
+                trace.addSample(lastTime, lastX / POSITION_SCALE, lastY / POSITION_SCALE);
+            }
+        }
+        return trace;
+    }
+}
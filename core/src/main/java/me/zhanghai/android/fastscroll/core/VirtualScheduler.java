@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll.core;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A {@link Scheduler} whose time only moves when told to, so that anything scheduled on it runs
+ * deterministically and without waiting.
+ */
+public class VirtualScheduler implements Scheduler {
+
+    @NonNull
+    private final PriorityQueue<Task> mTasks = new PriorityQueue<>();
+
+    private long mUptimeMillis;
+
+    private long mNextSequence;
+
+    @Override
+    public long uptimeMillis() {
+        return mUptimeMillis;
+    }
+
+    @Override
+    public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+        mTasks.add(new Task(runnable, mUptimeMillis + Math.max(0, delayMillis), mNextSequence++));
+    }
+
+    @Override
+    public void removeCallbacks(@NonNull Runnable runnable) {
+        for (Iterator<Task> iterator = mTasks.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().mRunnable == runnable) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Move time forward, running everything scheduled up to and including the new time in order.
+     */
+    public void advanceBy(long millis) {
+        advanceTo(mUptimeMillis + millis);
+    }
+
+    public void advanceTo(long uptimeMillis) {
+        while (!mTasks.isEmpty() && mTasks.peek().mTimeMillis <= uptimeMillis) {
+            Task task = mTasks.poll();
+            mUptimeMillis = Math.max(mUptimeMillis, task.mTimeMillis);
+            task.mRunnable.run();
+        }
+        mUptimeMillis = Math.max(mUptimeMillis, uptimeMillis);
+    }
+
+    /**
+     * Move time forward until nothing is scheduled anymore.
+     *
+     * @param maxMillis the maximum time to move forward, in case something keeps rescheduling
+     *                  itself
+     */
+    public void advanceUntilIdle(long maxMillis) {
+        long endMillis = mUptimeMillis + maxMillis;
+        while (!mTasks.isEmpty() && mTasks.peek().mTimeMillis <= endMillis) {
+            advanceTo(mTasks.peek().mTimeMillis);
+        }
+    }
+
+    public boolean hasPendingTasks() {
+        return !mTasks.isEmpty();
+    }
+
+    private static class Task implements Comparable<Task> {
+
+        @NonNull
+        final Runnable mRunnable;
+        final long mTimeMillis;
+        final long mSequence;
+
+        Task(@NonNull Runnable runnable, long timeMillis, long sequence) {
+            mRunnable = runnable;
+            mTimeMillis = timeMillis;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            int result = Long.compare(mTimeMillis, other.mTimeMillis);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThumbOffsetReconcilerTest {
+
+    private static final int THUMB_OFFSET_RANGE = 1000;
+
+    @Test
+    public void thumbKeepsMovingWhenScrollRangeChangesEveryStep() {
+        ThumbOffsetReconciler reconciler = new ThumbOffsetReconciler();
+        int scrollOffsetRange = 10000;
+        int lastThumbOffset = reconciler.reconcile(0, scrollOffsetRange, THUMB_OFFSET_RANGE);
+        for (int scrollOffset = 100; scrollOffset < 10000; scrollOffset += 100) {
+            // The estimate grows a bit on every step, as if newly measured rows were taller.
+            scrollOffsetRange += 80;
+            int thumbOffset = reconciler.reconcile(scrollOffset, scrollOffsetRange,
+                    THUMB_OFFSET_RANGE);
+            Assert.assertTrue("Thumb stopped at " + thumbOffset + " for scroll offset "
+                    + scrollOffset, thumbOffset > lastThumbOffset);
+            lastThumbOffset = thumbOffset;
+        }
+    }
+
+    @Test
+    public void thumbDoesNotJumpWhenOnlyScrollRangeChanges() {
+        ThumbOffsetReconciler reconciler = new ThumbOffsetReconciler();
+        int thumbOffset = reconciler.reconcile(5000, 10000, THUMB_OFFSET_RANGE);
+        Assert.assertEquals(thumbOffset, reconciler.reconcile(5000, 20000, THUMB_OFFSET_RANGE));
+    }
+
+    @Test
+    public void thumbConvergesToExactOffsetAtEnd() {
+        ThumbOffsetReconciler reconciler = new ThumbOffsetReconciler();
+        reconciler.reconcile(5000, 10000, THUMB_OFFSET_RANGE);
+        reconciler.reconcile(5000, 20000, THUMB_OFFSET_RANGE);
+        Assert.assertEquals(THUMB_OFFSET_RANGE, reconciler.reconcile(20000, 20000,
+                THUMB_OFFSET_RANGE));
+        Assert.assertEquals(0, reconciler.reconcile(0, 20000, THUMB_OFFSET_RANGE));
+    }
+}
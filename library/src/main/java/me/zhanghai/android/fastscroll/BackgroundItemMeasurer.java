@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.util.Log;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+
+/**
+ * Measures rows with an {@link ItemHeightMeasurer} on a small background thread pool shared across
+ * all fast scrollers, in chunks of rows picked by their distance to a focus row, e.g. the first
+ * visible row or the current drag target.
+ * <p>
+ * Results are delivered on the main thread, and results for an outdated generation of rows are
+ * dropped.
+ */
+class BackgroundItemMeasurer {
+
+    private static final String TAG = BackgroundItemMeasurer.class.getSimpleName();
+
+    private static final int CHUNK_SIZE = 128;
+
+    private static final int THREAD_COUNT = 2;
+
+    @NonNull
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(THREAD_COUNT,
+            THREAD_COUNT, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "FastScroller item measurement");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    private final View mView;
+    @NonNull
+    private final ItemHeightMeasurer mMeasurer;
+    @NonNull
+    private final Listener mListener;
+
+    @NonNull
+    private final BitSet mScheduledChunks = new BitSet();
+    private int mRunningChunkCount;
+    private int mGeneration;
+    private int mWidth = -1;
+    private int mSpanCount = -1;
+
+    public BackgroundItemMeasurer(@NonNull View view, @NonNull ItemHeightMeasurer measurer,
+                                  @NonNull Listener listener) {
+        mView = view;
+        mMeasurer = measurer;
+        mListener = listener;
+    }
+
+    /**
+     * Drop all scheduled and running measurements, e.g. when the rows have changed.
+     */
+    @MainThread
+    public void reset() {
+        ++mGeneration;
+        mScheduledChunks.clear();
+    }
+
+    @MainThread
+    public void schedule(int rowCount, int itemCount, int spanCount, int width, int focusRow) {
+        if (width != mWidth || spanCount != mSpanCount) {
+            reset();
+            mWidth = width;
+            mSpanCount = spanCount;
+        }
+        int chunkCount = (rowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunkCount == 0) {
+            return;
+        }
+        int focusChunk = Math.max(0, Math.min(focusRow / CHUNK_SIZE, chunkCount - 1));
+        while (mRunningChunkCount < THREAD_COUNT) {
+            int chunk = findNearestUnscheduledChunk(focusChunk, chunkCount);
+            if (chunk == -1) {
+                return;
+            }
+            mScheduledChunks.set(chunk);
+            int startRow = chunk * CHUNK_SIZE;
+            startChunk(startRow, Math.min(startRow + CHUNK_SIZE, rowCount), itemCount);
+        }
+    }
+
+    private int findNearestUnscheduledChunk(int focusChunk, int chunkCount) {
+        int nextChunk = mScheduledChunks.nextClearBit(focusChunk);
+        int previousChunk = mScheduledChunks.previousClearBit(focusChunk);
+        boolean hasNextChunk = nextChunk < chunkCount;
+        boolean hasPreviousChunk = previousChunk != -1;
+        if (hasNextChunk && hasPreviousChunk) {
+            return nextChunk - focusChunk <= focusChunk - previousChunk ? nextChunk
+                    : previousChunk;
+        }
+        return hasNextChunk ? nextChunk : previousChunk;
+    }
+
+    @MainThread
+    private void startChunk(int startRow, int endRow, int itemCount) {
+        ++mRunningChunkCount;
+        int generation = mGeneration;
+        int width = mWidth;
+        // Span sizes can only be looked up on the main thread. Rows may be in either order of
+        // positions, but they are still contiguous.
+        int[] rowStarts = new int[endRow - startRow];
+        int[] rowEnds = new int[endRow - startRow];
+        int startPosition = itemCount;
+        int endPosition = 0;
+        for (int i = 0; i < rowStarts.length; ++i) {
+            int row = startRow + i;
+            rowStarts[i] = Math.min(mListener.getFirstPositionInRow(row), itemCount);
+            rowEnds[i] = Math.min(mListener.getEndPositionInRow(row), itemCount);
+            startPosition = Math.min(startPosition, rowStarts[i]);
+            endPosition = Math.max(endPosition, rowEnds[i]);
+        }
+        int chunkStartPosition = startPosition;
+        int[] spanSizes = new int[Math.max(0, endPosition - startPosition)];
+        for (int i = 0; i < spanSizes.length; ++i) {
+            spanSizes[i] = mListener.getSpanSize(startPosition + i);
+        }
+        sExecutor.execute(() -> {
+            int[] heights = new int[endRow - startRow];
+            Arrays.fill(heights, RunLengthHeightStore.UNKNOWN_HEIGHT);
+            try {
+                for (int i = 0; i < heights.length; ++i) {
+                    heights[i] = measureRow(rowStarts[i], rowEnds[i], chunkStartPosition,
+                            spanSizes, width);
+                }
+            } catch (Throwable t) {
+                // Treat the whole chunk as unknown, but keep measuring other chunks.
+                Log.e(TAG, "Failed to measure rows from " + startRow, t);
+                Arrays.fill(heights, RunLengthHeightStore.UNKNOWN_HEIGHT);
+            } finally {
+                mView.post(() -> onChunkMeasured(generation, startRow, heights));
+            }
+        });
+    }
+
+    private int measureRow(int startPosition, int endPosition, int chunkStartPosition,
+                           @NonNull int[] spanSizes, int spanWidth) {
+        int height = RunLengthHeightStore.UNKNOWN_HEIGHT;
+        for (int position = startPosition; position < endPosition; ++position) {
+            int width = spanWidth * spanSizes[position - chunkStartPosition];
+            int itemHeight = mMeasurer.measureItemHeight(position, width);
+            if (itemHeight == RunLengthHeightStore.UNKNOWN_HEIGHT) {
+                return RunLengthHeightStore.UNKNOWN_HEIGHT;
+            }
+            height = Math.max(height, itemHeight);
+        }
+        return height;
+    }
+
+    @MainThread
+    private void onChunkMeasured(int generation, int startRow, @NonNull int[] heights) {
+        --mRunningChunkCount;
+        // Apply any pending change to the rows first, which may reset this measurer.
+        mListener.syncRows();
+        if (generation != mGeneration) {
+            // Let the next frame schedule more.
+            mView.invalidate();
+            return;
+        }
+        mListener.onRowHeightsMeasured(startRow, heights);
+    }
+
+    public interface Listener {
+
+        @MainThread
+        int getFirstPositionInRow(int row);
+
+        /**
+         * @return the position after the last one in the row
+         */
+        @MainThread
+        int getEndPositionInRow(int row);
+
+        @MainThread
+        int getSpanSize(int position);
+
+        /**
+         * Apply any pending change to the rows, and {@link #reset()} the measurer if the rows have
+         * changed.
+         */
+        @MainThread
+        void syncRows();
+
+        @MainThread
+        void onRowHeightsMeasured(int startRow, @NonNull int[] heights);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import android.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ConcatAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import me.zhanghai.android.fastscroll.core.ItemHeightEstimator;
+
+/**
+ * The segments of a {@link ConcatAdapter}, each with its own item height model, so that e.g. a
+ * header or a footer doesn't skew the estimate for the data adapters, and a change in one segment
+ * only needs to sample the view types of that segment again.
+ */
+class ConcatAdapterSegments {
+
+    // The distribution of view types in a segment is sampled from at most this many evenly spaced
+    // positions.
+    private static final int MAX_VIEW_TYPE_SAMPLE_COUNT = 1024;
+
+    @Nullable
+    private ConcatAdapter mAdapter;
+    @NonNull
+    private final ArrayList<Segment> mSegments = new ArrayList<>();
+    private boolean mSegmentsChanged;
+
+    @Nullable
+    public ConcatAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Set the adapter of the view, keeping the height models of segments that are still wrapped
+     * if it's the same {@link ConcatAdapter}.
+     */
+    public void setAdapter(@Nullable RecyclerView.Adapter<?> adapter) {
+        ConcatAdapter concatAdapter = adapter instanceof ConcatAdapter ? (ConcatAdapter) adapter
+                : null;
+        if (mAdapter == concatAdapter) {
+            return;
+        }
+        mAdapter = concatAdapter;
+        for (int i = 0, size = mSegments.size(); i < size; ++i) {
+            mSegments.get(i).unregister();
+        }
+        mSegments.clear();
+        mSegmentsChanged = true;
+    }
+
+    /**
+     * Notify that adapters may have been added to or removed from the {@link ConcatAdapter}.
+     */
+    public void onSegmentsChanged() {
+        mSegmentsChanged = true;
+    }
+
+    public void addHeight(@NonNull RecyclerView.ViewHolder viewHolder, int height) {
+        if (mAdapter == null) {
+            return;
+        }
+        updateSegments();
+        Segment segment = findSegment(viewHolder.getBindingAdapter());
+        if (segment != null) {
+            segment.itemHeightEstimator.addHeight(viewHolder.getItemViewType(), height);
+        }
+    }
+
+    public void clearHeights() {
+        for (int i = 0, size = mSegments.size(); i < size; ++i) {
+            mSegments.get(i).itemHeightEstimator.clearHeights();
+        }
+    }
+
+    /**
+     * @param unknownHeight the height for segments without any measured height
+     * @return the average item height weighted by the item count of each segment
+     */
+    public double getAverageHeight(double unknownHeight) {
+        ConcatAdapter adapter = mAdapter;
+        if (adapter == null) {
+            return unknownHeight;
+        }
+        updateSegments();
+        double heightSum = 0;
+        long totalItemCount = 0;
+        int segmentStart = 0;
+        for (int i = 0, size = mSegments.size(); i < size; ++i) {
+            Segment segment = mSegments.get(i);
+            int itemCount = segment.adapter.getItemCount();
+            if (itemCount > 0) {
+                ItemHeightEstimator itemHeightEstimator = segment.itemHeightEstimator;
+                double averageHeight;
+                if (itemHeightEstimator.hasHeights()) {
+                    segment.updateViewTypes(adapter, segmentStart, itemCount);
+                    averageHeight = itemHeightEstimator.getAverageHeight();
+                } else {
+                    averageHeight = unknownHeight;
+                }
+                heightSum += itemCount * averageHeight;
+                totalItemCount += itemCount;
+            }
+            segmentStart += itemCount;
+        }
+        return totalItemCount > 0 ? heightSum / totalItemCount : unknownHeight;
+    }
+
+    /**
+     * Resolve a position in the {@link ConcatAdapter} to the innermost wrapped adapter that
+     * implements the provider interface, e.g. {@link PopupTextProvider}.
+     *
+     * @param outPosition the position in the returned provider
+     * @return the provider, or {@code null} if the adapter at the position doesn't implement it
+     */
+    @Nullable
+    public static <T> T findProvider(@NonNull ConcatAdapter adapter, int position,
+                                     @NonNull Class<T> providerClass, @NonNull int[] outPosition) {
+        RecyclerView.Adapter<?> wrappedAdapter = adapter;
+        int wrappedPosition = position;
+        while (wrappedAdapter instanceof ConcatAdapter) {
+            ConcatAdapter concatAdapter = (ConcatAdapter) wrappedAdapter;
+            if (wrappedPosition < 0 || wrappedPosition >= concatAdapter.getItemCount()) {
+                return null;
+            }
+            Pair<RecyclerView.Adapter<? extends RecyclerView.ViewHolder>, Integer>
+                    adapterAndPosition = concatAdapter.getWrappedAdapterAndPosition(
+                            wrappedPosition);
+            wrappedAdapter = adapterAndPosition.first;
+            wrappedPosition = adapterAndPosition.second;
+        }
+        if (!providerClass.isInstance(wrappedAdapter)) {
+            return null;
+        }
+        outPosition[0] = wrappedPosition;
+        return providerClass.cast(wrappedAdapter);
+    }
+
+    private void updateSegments() {
+        if (!mSegmentsChanged || mAdapter == null) {
+            return;
+        }
+        mSegmentsChanged = false;
+        List<? extends RecyclerView.Adapter<? extends RecyclerView.ViewHolder>> adapters =
+                mAdapter.getAdapters();
+        ArrayList<Segment> oldSegments = new ArrayList<>(mSegments);
+        mSegments.clear();
+        for (int i = 0, adaptersSize = adapters.size(); i < adaptersSize; ++i) {
+            RecyclerView.Adapter<?> adapter = adapters.get(i);
+            Segment segment = null;
+            for (int j = 0, size = oldSegments.size(); j < size; ++j) {
+                if (oldSegments.get(j).adapter == adapter) {
+                    segment = oldSegments.remove(j);
+                    break;
+                }
+            }
+            if (segment == null) {
+                segment = new Segment(adapter);
+            }
+            mSegments.add(segment);
+        }
+        for (int i = 0, size = oldSegments.size(); i < size; ++i) {
+            oldSegments.get(i).unregister();
+        }
+    }
+
+    @Nullable
+    private Segment findSegment(@Nullable RecyclerView.Adapter<?> adapter) {
+        for (int i = 0, size = mSegments.size(); i < size; ++i) {
+            Segment segment = mSegments.get(i);
+            if (segment.adapter == adapter) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private static class Segment extends RecyclerView.AdapterDataObserver {
+
+        @NonNull
+        public final RecyclerView.Adapter<?> adapter;
+        @NonNull
+        public final ItemHeightEstimator itemHeightEstimator = new ItemHeightEstimator();
+        public boolean viewTypesChanged = true;
+
+        public Segment(@NonNull RecyclerView.Adapter<?> adapter) {
+            this.adapter = adapter;
+            this.adapter.registerAdapterDataObserver(this);
+        }
+
+        public void unregister() {
+            adapter.unregisterAdapterDataObserver(this);
+        }
+
+        public void updateViewTypes(@NonNull ConcatAdapter concatAdapter, int segmentStart,
+                                    int itemCount) {
+            if (!viewTypesChanged) {
+                return;
+            }
+            viewTypesChanged = false;
+            itemHeightEstimator.clearItems();
+            // Measured view holders have the view types of the ConcatAdapter, which differ from
+            // the ones of the wrapped adapter when view types are isolated.
+            int sampleCount = Math.min(itemCount, MAX_VIEW_TYPE_SAMPLE_COUNT);
+            for (int i = 0; i < sampleCount; ++i) {
+                int position = segmentStart + (int) ((long) i * itemCount / sampleCount);
+                itemHeightEstimator.addItems(concatAdapter.getItemViewType(position), 1);
+            }
+        }
+
+        @Override
+        public void onChanged() {
+            viewTypesChanged = true;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            viewTypesChanged = true;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            viewTypesChanged = true;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            viewTypesChanged = true;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            viewTypesChanged = true;
+        }
+    }
+}
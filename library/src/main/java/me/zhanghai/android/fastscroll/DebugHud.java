@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import me.zhanghai.android.fastscroll.core.Scheduler;
+
+/**
+ * A debug overlay showing how well the scroll range estimate of a
+ * {@link FastScroller.ViewHelper} holds up, and how much each frame costs.
+ * <p>
+ * The text is rebuilt at most every {@link #UPDATE_INTERVAL_MILLIS}, so that the overlay itself
+ * doesn't add noticeably to the frames it measures.
+ */
+class DebugHud extends Drawable {
+
+    private static final long UPDATE_INTERVAL_MILLIS = 250;
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final int LINE_COUNT = 5;
+
+    @NonNull
+    private final View mView;
+    @NonNull
+    private final DragStats mDragStats;
+    @NonNull
+    private final Scheduler mScheduler;
+
+    @NonNull
+    private final Paint mBackgroundPaint;
+    @NonNull
+    private final Paint mTextPaint;
+    private final int mPadding;
+    private final int mTextAscent;
+    private final int mLineHeight;
+
+    @NonNull
+    private final StringBuilder[] mLines = new StringBuilder[LINE_COUNT];
+    private int mLinesWidth;
+
+    private long mLastUpdateMillis = Long.MIN_VALUE;
+
+    private long mPreDrawStartNanos;
+    private long mLastPreDrawNanos;
+    private long mMaxPreDrawNanos;
+
+    private long mScrollToStartNanos;
+    private long mLastScrollToNanos;
+    private long mMaxScrollToNanos;
+    private int mScrollToCount;
+    private int mPendingScrollToOffset = UNKNOWN;
+    private int mScrollToError = UNKNOWN;
+
+    private int mEstimatedScrollRange;
+    private int mObservedScrollRange = UNKNOWN;
+
+    private boolean mDragging;
+    private int mLastDragLayoutCount = UNKNOWN;
+
+    public DebugHud(@NonNull View view, @NonNull DragStats dragStats,
+                    @NonNull Scheduler scheduler) {
+        mView = view;
+        mDragStats = dragStats;
+        mScheduler = scheduler;
+        Resources resources = view.getResources();
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(0xB0000000);
+        mBackgroundPaint.setStyle(Paint.Style.FILL);
+        mTextPaint = new Paint();
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(resources.getDimensionPixelSize(R.dimen.afs_debug_hud_text_size));
+        mPadding = resources.getDimensionPixelOffset(R.dimen.afs_debug_hud_padding);
+        Paint.FontMetricsInt fontMetrics = mTextPaint.getFontMetricsInt();
+        mTextAscent = fontMetrics.ascent;
+        mLineHeight = fontMetrics.descent - fontMetrics.ascent;
+        for (int i = 0; i < mLines.length; ++i) {
+            mLines[i] = new StringBuilder();
+        }
+    }
+
+    public void setDragging(boolean dragging) {
+        if (mDragging == dragging) {
+            return;
+        }
+        mDragging = dragging;
+        if (!mDragging) {
+            mLastDragLayoutCount = mDragStats.getLayoutCount();
+        }
+    }
+
+    public void onScrollToStart() {
+        mScrollToStartNanos = System.nanoTime();
+    }
+
+    public void onScrollToEnd(int offset) {
+        long durationNanos = System.nanoTime() - mScrollToStartNanos;
+        mLastScrollToNanos = durationNanos;
+        mMaxScrollToNanos = Math.max(mMaxScrollToNanos, durationNanos);
+        ++mScrollToCount;
+        mPendingScrollToOffset = offset;
+    }
+
+    public void onPreDrawStart() {
+        mPreDrawStartNanos = System.nanoTime();
+    }
+
+    /**
+     * @param canScrollDown whether the view can still scroll down, because only when it can't do
+     *                      we know the real scroll range.
+     */
+    public void onPreDrawEnd(int scrollRange, int scrollOffset, boolean canScrollDown, int left,
+                             int top) {
+        long durationNanos = System.nanoTime() - mPreDrawStartNanos;
+        mLastPreDrawNanos = durationNanos;
+        mMaxPreDrawNanos = Math.max(mMaxPreDrawNanos, durationNanos);
+
+        mEstimatedScrollRange = scrollRange;
+        if (!canScrollDown) {
+            mObservedScrollRange = scrollOffset + mView.getHeight();
+        }
+        if (mPendingScrollToOffset != UNKNOWN) {
+            mScrollToError = scrollOffset - mPendingScrollToOffset;
+            mPendingScrollToOffset = UNKNOWN;
+        }
+
+        long nowMillis = mScheduler.uptimeMillis();
+        if (mLastUpdateMillis == Long.MIN_VALUE
+                || nowMillis - mLastUpdateMillis >= UPDATE_INTERVAL_MILLIS) {
+            mLastUpdateMillis = nowMillis;
+            updateLines();
+            mMaxPreDrawNanos = 0;
+            mMaxScrollToNanos = 0;
+            mScrollToCount = 0;
+        }
+
+        setBounds(left, top, left + mLinesWidth + 2 * mPadding,
+                top + mLines.length * mLineHeight + 2 * mPadding);
+    }
+
+    private void updateLines() {
+        int rangeError = mObservedScrollRange != UNKNOWN
+                ? mEstimatedScrollRange - mObservedScrollRange : UNKNOWN;
+        StringBuilder line = clearLine(0);
+        line.append("range est ").append(mEstimatedScrollRange).append(" obs ");
+        appendInt(line, mObservedScrollRange).append(" err ");
+        appendInt(line, rangeError);
+        line = clearLine(1);
+        line.append("scrollTo err ");
+        appendInt(line, mScrollToError);
+        line = clearLine(2);
+        line.append("preDraw ");
+        appendMillis(line, mLastPreDrawNanos).append(" ms (max ");
+        appendMillis(line, mMaxPreDrawNanos).append(')');
+        line = clearLine(3);
+        line.append("scrollTo ");
+        appendMillis(line, mLastScrollToNanos).append(" ms (max ");
+        appendMillis(line, mMaxScrollToNanos).append(") x").append(mScrollToCount);
+        line = clearLine(4);
+        line.append("layouts/drag ");
+        appendInt(line, mDragging ? mDragStats.getLayoutCount() : UNKNOWN).append(" (last ");
+        appendInt(line, mLastDragLayoutCount).append(')');
+        mLinesWidth = 0;
+        for (StringBuilder currentLine : mLines) {
+            mLinesWidth = Math.max(mLinesWidth, (int) Math.ceil(mTextPaint.measureText(
+                    currentLine, 0, currentLine.length())));
+        }
+        invalidateSelf();
+    }
+
+    @NonNull
+    private StringBuilder clearLine(int index) {
+        StringBuilder line = mLines[index];
+        line.setLength(0);
+        return line;
+    }
+
+    @NonNull
+    private static StringBuilder appendInt(@NonNull StringBuilder builder, int value) {
+        return value != UNKNOWN ? builder.append(value) : builder.append('-');
+    }
+
+    /**
+     * Appends the duration in milliseconds with two decimal places, without going through
+     * {@code String.format()} and its allocations.
+     */
+    @NonNull
+    private static StringBuilder appendMillis(@NonNull StringBuilder builder, long nanos) {
+        long hundredthsOfMillis = (nanos + 5_000) / 10_000;
+        builder.append(hundredthsOfMillis / 100).append('.');
+        long fraction = hundredthsOfMillis % 100;
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        canvas.drawRect(bounds, mBackgroundPaint);
+        float x = bounds.left + mPadding;
+        float y = bounds.top + mPadding - mTextAscent;
+        for (StringBuilder line : mLines) {
+            canvas.drawText(line, 0, line.length(), x, y, mTextPaint);
+            y += mLineHeight;
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {}
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {}
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
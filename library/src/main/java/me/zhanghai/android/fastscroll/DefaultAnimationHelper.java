@@ -19,9 +19,14 @@ package me.zhanghai.android.fastscroll;
 import android.view.View;
 import android.view.animation.Interpolator;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.interpolator.view.animation.FastOutLinearInInterpolator;
 import androidx.interpolator.view.animation.LinearOutSlowInInterpolator;
+import me.zhanghai.android.fastscroll.core.Scheduler;
 
 public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
 
@@ -36,13 +41,27 @@ public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
     @NonNull
     private final View mView;
 
+    @Nullable
+    private final Scheduler mScheduler;
+    @NonNull
+    private final Map<View, ScheduledViewAnimator> mScheduledAnimators = new HashMap<>();
+
     private boolean mScrollbarAutoHideEnabled = true;
 
     private boolean mShowingScrollbar = true;
     private boolean mShowingPopup;
 
     public DefaultAnimationHelper(@NonNull View view) {
+        this(view, null);
+    }
+
+    /**
+     * Create an animation helper that runs its animations in frames posted to the scheduler,
+     * instead of on the wall clock, e.g. for deterministic tests and benchmarks.
+     */
+    public DefaultAnimationHelper(@NonNull View view, @Nullable Scheduler scheduler) {
         mView = view;
+        mScheduler = scheduler;
     }
 
     @Override
@@ -53,18 +72,8 @@ public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
         }
         mShowingScrollbar = true;
 
-        trackView.animate()
-                .alpha(1)
-                .translationX(0)
-                .setDuration(SHOW_DURATION_MILLIS)
-                .setInterpolator(SHOW_SCROLLBAR_INTERPOLATOR)
-                .start();
-        thumbView.animate()
-                .alpha(1)
-                .translationX(0)
-                .setDuration(SHOW_DURATION_MILLIS)
-                .setInterpolator(SHOW_SCROLLBAR_INTERPOLATOR)
-                .start();
+        animate(trackView, 1, 0, SHOW_DURATION_MILLIS, SHOW_SCROLLBAR_INTERPOLATOR);
+        animate(thumbView, 1, 0, SHOW_DURATION_MILLIS, SHOW_SCROLLBAR_INTERPOLATOR);
     }
 
     @Override
@@ -83,18 +92,8 @@ public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
         } else {
             translationX = trackView.getRight() == mView.getWidth() ? width : 0;
         }
-        trackView.animate()
-                .alpha(0)
-                .translationX(translationX)
-                .setDuration(HIDE_DURATION_MILLIS)
-                .setInterpolator(HIDE_SCROLLBAR_INTERPOLATOR)
-                .start();
-        thumbView.animate()
-                .alpha(0)
-                .translationX(translationX)
-                .setDuration(HIDE_DURATION_MILLIS)
-                .setInterpolator(HIDE_SCROLLBAR_INTERPOLATOR)
-                .start();
+        animate(trackView, 0, translationX, HIDE_DURATION_MILLIS, HIDE_SCROLLBAR_INTERPOLATOR);
+        animate(thumbView, 0, translationX, HIDE_DURATION_MILLIS, HIDE_SCROLLBAR_INTERPOLATOR);
     }
 
     @Override
@@ -119,10 +118,7 @@ public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
         }
         mShowingPopup = true;
 
-        popupView.animate()
-                .alpha(1)
-                .setDuration(SHOW_DURATION_MILLIS)
-                .start();
+        animatePopup(popupView, 1, SHOW_DURATION_MILLIS);
     }
 
     @Override
@@ -133,9 +129,42 @@ public class DefaultAnimationHelper implements FastScroller.AnimationHelper {
         }
         mShowingPopup = false;
 
+        animatePopup(popupView, 0, HIDE_DURATION_MILLIS);
+    }
+
+    private void animate(@NonNull View view, float alpha, float translationX, int durationMillis,
+                         @NonNull Interpolator interpolator) {
+        if (mScheduler != null) {
+            getScheduledAnimator(view).animate(alpha, translationX, durationMillis, interpolator);
+            return;
+        }
+        view.animate()
+                .alpha(alpha)
+                .translationX(translationX)
+                .setDuration(durationMillis)
+                .setInterpolator(interpolator)
+                .start();
+    }
+
+    private void animatePopup(@NonNull View popupView, float alpha, int durationMillis) {
+        if (mScheduler != null) {
+            getScheduledAnimator(popupView).animate(alpha, popupView.getTranslationX(),
+                    durationMillis, null);
+            return;
+        }
         popupView.animate()
-                .alpha(0)
-                .setDuration(HIDE_DURATION_MILLIS)
+                .alpha(alpha)
+                .setDuration(durationMillis)
                 .start();
     }
+
+    @NonNull
+    private ScheduledViewAnimator getScheduledAnimator(@NonNull View view) {
+        ScheduledViewAnimator animator = mScheduledAnimators.get(view);
+        if (animator == null) {
+            animator = new ScheduledViewAnimator(view, mScheduler);
+            mScheduledAnimators.put(view, animator);
+        }
+        return animator;
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counts of the work done for a single drag of the scrollbar, so that regressions in the amount of
+ * work per drag can be caught.
+ *
+ * @see FastScroller#setOnDragStatsListener(FastScroller.OnDragStatsListener)
+ */
+public class DragStats {
+
+    private int mTouchEventCount;
+    private int mScrollToCount;
+    private int mLayoutCount;
+    private int mPopupMeasureCount;
+
+    DragStats() {}
+
+    public int getTouchEventCount() {
+        return mTouchEventCount;
+    }
+
+    /**
+     * @return the number of {@link FastScroller.ViewHelper#scrollTo(int)} calls
+     */
+    public int getScrollToCount() {
+        return mScrollToCount;
+    }
+
+    /**
+     * @return the number of layout passes of the view tree
+     */
+    public int getLayoutCount() {
+        return mLayoutCount;
+    }
+
+    public int getPopupMeasureCount() {
+        return mPopupMeasureCount;
+    }
+
+    void reset() {
+        mTouchEventCount = 0;
+        mScrollToCount = 0;
+        mLayoutCount = 0;
+        mPopupMeasureCount = 0;
+    }
+
+    void onTouchEvent() {
+        ++mTouchEventCount;
+    }
+
+    void onScrollTo() {
+        ++mScrollToCount;
+    }
+
+    void onLayout() {
+        ++mLayoutCount;
+    }
+
+    void onPopupMeasure() {
+        ++mPopupMeasureCount;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DragStats{touchEventCount=" + mTouchEventCount + ", scrollToCount="
+                + mScrollToCount + ", layoutCount=" + mLayoutCount + ", popupMeasureCount="
+                + mPopupMeasureCount + "}";
+    }
+}
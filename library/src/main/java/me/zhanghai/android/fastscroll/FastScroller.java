@@ -17,8 +17,11 @@
 package me.zhanghai.android.fastscroll;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.Gravity;
 import android.view.MotionEvent;
@@ -26,21 +29,40 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewGroupOverlay;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.Objects;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.appcompat.widget.AppCompatTextView;
-import androidx.core.math.MathUtils;
 import androidx.core.util.Consumer;
+import me.zhanghai.android.fastscroll.core.HysteresisFilter;
+import me.zhanghai.android.fastscroll.core.LinearMotionPredictor;
+import me.zhanghai.android.fastscroll.core.PopupGeometry;
+import me.zhanghai.android.fastscroll.core.PrecisionDrag;
+import me.zhanghai.android.fastscroll.core.Scheduler;
+import me.zhanghai.android.fastscroll.core.ScrollbarGeometry;
+import me.zhanghai.android.fastscroll.core.ThumbOffsetReconciler;
 
 public class FastScroller {
 
+    private static final int NO_SCROLL_OFFSET = -1;
+
+    // Predict the touch position for the upcoming frame.
+    private static final long MOTION_PREDICTION_MILLIS = 16;
+
     private final int mMinTouchTargetSize;
     private final int mTouchSlop;
+    private final float mPrecisionDragBandSize;
+    private final float mPrecisionDragFastVelocity;
 
     @NonNull
     private final ViewGroup mView;
@@ -50,6 +72,8 @@ public class FastScroller {
     private Rect mUserPadding;
     @NonNull
     private final AnimationHelper mAnimationHelper;
+    @NonNull
+    private final Scheduler mScheduler;
 
     private final int mTrackWidth;
     private final int mThumbWidth;
@@ -62,8 +86,27 @@ public class FastScroller {
     @NonNull
     private final TextView mPopupView;
 
+    private final int mPopupPreviewSize;
+    @NonNull
+    private final PopupPreviewLoader mPopupPreviewLoader;
+    @Nullable
+    private Object mPopupPreviewKey;
+    @Nullable
+    private Bitmap mPopupPreview;
+    private boolean mPopupPreviewChanged;
+
+    // A snapshot of the scroll state shared by everything in a frame.
+    @NonNull
+    private final ScrollState mScrollState = new ScrollState();
+    private boolean mScrollStateValid;
+    private boolean mShowScrollbarPending;
+
     private boolean mScrollbarEnabled;
     private int mThumbOffset;
+    private int mExactThumbOffset;
+
+    @Nullable
+    private ThumbOffsetReconciler mThumbOffsetReconciler;
 
     private float mDownX;
     private float mDownY;
@@ -72,9 +115,38 @@ public class FastScroller {
     private int mDragStartThumbOffset;
     private boolean mDragging;
 
+    @NonNull
+    private final HysteresisFilter mDragFilter;
+    private int mLastScrollToOffset = NO_SCROLL_OFFSET;
+
+    private boolean mScrubModeEnabled;
+    private int mScrubScrollOffset = NO_SCROLL_OFFSET;
+
+    private boolean mMotionPredictionEnabled;
+    @NonNull
+    private final LinearMotionPredictor mMotionPredictor = new LinearMotionPredictor();
+
+    private boolean mPrecisionDragEnabled;
+    private double mDragScrollOffset;
+    private float mLastDragY;
+    private long mLastDragTime;
+    private float mDragVelocity;
+
     @NonNull
     private final Runnable mAutoHideScrollbarRunnable = this::autoHideScrollbar;
 
+    @NonNull
+    private final DragStats mDragStats = new DragStats();
+    @NonNull
+    private final ViewTreeObserver.OnGlobalLayoutListener mOnGlobalLayoutListener =
+            mDragStats::onLayout;
+    private boolean mObservingLayouts;
+    @Nullable
+    private OnDragStatsListener mOnDragStatsListener;
+
+    @Nullable
+    private DebugHud mDebugHud;
+
     @NonNull
     private final Rect mTempRect = new Rect();
 
@@ -82,16 +154,32 @@ public class FastScroller {
                         @Nullable Rect padding, @NonNull Drawable trackDrawable,
                         @NonNull Drawable thumbDrawable, @NonNull Consumer<TextView> popupStyle,
                         @NonNull AnimationHelper animationHelper) {
+        this(view, viewHelper, padding, trackDrawable, thumbDrawable, popupStyle, animationHelper,
+                new ViewScheduler(view));
+    }
+
+    public FastScroller(@NonNull ViewGroup view, @NonNull ViewHelper viewHelper,
+                        @Nullable Rect padding, @NonNull Drawable trackDrawable,
+                        @NonNull Drawable thumbDrawable, @NonNull Consumer<TextView> popupStyle,
+                        @NonNull AnimationHelper animationHelper, @NonNull Scheduler scheduler) {
 
         mMinTouchTargetSize = view.getResources().getDimensionPixelSize(
                 R.dimen.afs_min_touch_target_size);
         Context context = view.getContext();
         mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        mDragFilter = new HysteresisFilter(view.getResources().getDimension(
+                R.dimen.afs_drag_hysteresis));
+        mPrecisionDragBandSize = view.getResources().getDimension(
+                R.dimen.afs_precision_drag_band_size);
+        // Convert from per second to per millisecond.
+        mPrecisionDragFastVelocity = view.getResources().getDimension(
+                R.dimen.afs_precision_drag_fast_velocity_per_second) / 1000;
 
         mView = view;
         mViewHelper = viewHelper;
         mUserPadding = padding;
         mAnimationHelper = animationHelper;
+        mScheduler = scheduler;
 
         mTrackWidth = requireNonNegative(trackDrawable.getIntrinsicWidth(),
                 "trackDrawable.getIntrinsicWidth() < 0");
@@ -108,6 +196,10 @@ public class FastScroller {
         mPopupView.setLayoutParams(new FrameLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
         popupStyle.accept(mPopupView);
+        mPopupPreviewSize = view.getResources().getDimensionPixelSize(
+                R.dimen.afs_popup_preview_size);
+        mPopupPreviewLoader = new PopupPreviewLoader(mView, mViewHelper, mPopupPreviewSize,
+                this::setPopupPreview);
 
         ViewGroupOverlay overlay = mView.getOverlay();
         overlay.add(mTrackView);
@@ -156,6 +248,115 @@ public class FastScroller {
         mView.invalidate();
     }
 
+    /**
+     * Remove the views of this scroller from the overlay of the view, after which it shouldn't be
+     * used anymore.
+     */
+    void removeFromView() {
+        setDebugHudEnabled(false);
+        ViewGroupOverlay overlay = mView.getOverlay();
+        overlay.remove(mTrackView);
+        overlay.remove(mThumbView);
+        overlay.remove(mPopupView);
+    }
+
+    public void setDebugHudEnabled(boolean enabled) {
+        if ((mDebugHud != null) == enabled) {
+            return;
+        }
+        ViewGroupOverlay overlay = mView.getOverlay();
+        if (enabled) {
+            mDebugHud = new DebugHud(mView, mDragStats, mScheduler);
+            mDebugHud.setDragging(mDragging);
+            overlay.add(mDebugHud);
+        } else {
+            overlay.remove(mDebugHud);
+            mDebugHud = null;
+        }
+        mView.invalidate();
+    }
+
+    /**
+     * Set whether scrub mode is enabled, where dragging only moves the thumb and updates the popup,
+     * and the content is only scrolled once when the finger is lifted.
+     * <p>
+     * This avoids laying out the content for every frame during a drag, which helps when binding
+     * items is expensive. The popup text then comes from
+     * {@link ViewHelper#getPopupTextForScrollOffset(int)}.
+     */
+    public void setScrubModeEnabled(boolean enabled) {
+        mScrubModeEnabled = enabled;
+    }
+
+    /**
+     * Set whether changes in the scroll range estimate should be reconciled over subsequent
+     * scrolling instead of making the thumb jump, for views whose scroll range is only an estimate
+     * that improves over time.
+     */
+    public void setScrollRangeReconciliationEnabled(boolean enabled) {
+        if ((mThumbOffsetReconciler != null) == enabled) {
+            return;
+        }
+        mThumbOffsetReconciler = enabled ? new ThumbOffsetReconciler() : null;
+        mView.invalidate();
+    }
+
+    /**
+     * Set whether the scroll target while dragging should be predicted from the recent touch
+     * samples for the upcoming frame, so that the content trails the finger less.
+     */
+    public void setMotionPredictionEnabled(boolean enabled) {
+        mMotionPredictionEnabled = enabled;
+    }
+
+    /**
+     * Set whether precision dragging is enabled, where moving the finger away from the track while
+     * dragging slowly scrubs through the content more finely, for navigating very long content.
+     */
+    public void setPrecisionDragEnabled(boolean enabled) {
+        mPrecisionDragEnabled = enabled;
+    }
+
+    /**
+     * Save the scroll model of the view helper, e.g. the measured item heights, so that the
+     * scrollbar is accurate right after the view is restored, even after process death.
+     * <p>
+     * A small model is saved in the saved instance state, and a large one is saved in a file in
+     * the directory, keyed by the dataset ID.
+     *
+     * @param directory the directory for large models, e.g. the app cache directory
+     * @param datasetId the ID of the dataset, e.g. a query or a database table
+     * @param datasetVersion the version of the dataset, so that a model for outdated data isn't
+     *                       restored
+     */
+    public void saveScrollModel(@NonNull Bundle outState, @NonNull File directory,
+                                @NonNull String datasetId, int datasetVersion)
+            throws IOException {
+        ScrollModelPersistence.save(mViewHelper, outState, directory, datasetId, datasetVersion);
+    }
+
+    /**
+     * Restore the scroll model saved by {@link #saveScrollModel(Bundle, File, String, int)}, after
+     * the data has been set on the view, because later changes to the data may discard it.
+     *
+     * @return whether a scroll model for the dataset ID and version was restored
+     */
+    public boolean restoreScrollModel(@Nullable Bundle savedInstanceState,
+                                      @NonNull File directory, @NonNull String datasetId,
+                                      int datasetVersion) throws IOException {
+        if (!ScrollModelPersistence.restore(mViewHelper, savedInstanceState, directory, datasetId,
+                datasetVersion)) {
+            return false;
+        }
+        mScrollStateValid = false;
+        mView.invalidate();
+        return true;
+    }
+
+    public void setOnDragStatsListener(@Nullable OnDragStatsListener listener) {
+        mOnDragStatsListener = listener;
+    }
+
     @NonNull
     private Rect getPadding() {
         if (mUserPadding != null) {
@@ -168,8 +369,34 @@ public class FastScroller {
     }
 
     private void onPreDraw() {
+        // Layout may have changed the scroll state since the last frame.
+        mScrollStateValid = false;
+        if (mDebugHud == null) {
+            updateViews();
+            return;
+        }
+
+        mDebugHud.onPreDrawStart();
+        updateViews();
+        Rect padding = getPadding();
+        int hudLeft = mView.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL
+                ? padding.left + Math.max(mTrackWidth, mThumbWidth) : padding.left;
+        ScrollState scrollState = getScrollState();
+        mDebugHud.onPreDrawEnd(scrollState.scrollRange, scrollState.scrollOffset,
+                mView.canScrollVertically(1), mView.getScrollX() + hudLeft,
+                mView.getScrollY() + padding.top);
+    }
+
+    private void updateViews() {
 
         updateScrollbarState();
+        if (mShowScrollbarPending) {
+            mShowScrollbarPending = false;
+            if (mScrollbarEnabled) {
+                mAnimationHelper.showScrollbar(mTrackView, mThumbView);
+                postAutoHideScrollbar();
+            }
+        }
         mTrackView.setVisibility(mScrollbarEnabled ? View.VISIBLE : View.INVISIBLE);
         mThumbView.setVisibility(mScrollbarEnabled ? View.VISIBLE : View.INVISIBLE);
         if (!mScrollbarEnabled) {
@@ -195,14 +422,32 @@ public class FastScroller {
         layoutView(mThumbView, thumbLeft, thumbTop, thumbLeft + mThumbWidth,
                 thumbTop + mThumbHeight);
 
-        CharSequence popupText = mViewHelper.getPopupText();
-        boolean hasPopup = !TextUtils.isEmpty(popupText);
+        CharSequence popupText;
+        if (mScrubScrollOffset != NO_SCROLL_OFFSET) {
+            popupText = mViewHelper.getPopupTextForScrollOffset(mScrubScrollOffset);
+        } else {
+            // Reuse the first position from the scroll state instead of finding it again.
+            int firstPosition = getScrollState().firstPosition;
+            popupText = firstPosition != ScrollState.NO_POSITION
+                    ? mViewHelper.getPopupTextForPosition(firstPosition)
+                    : mViewHelper.getPopupText();
+        }
+        // Only load previews while dragging, because the popup isn't shown otherwise.
+        if (mDragging) {
+            updatePopupPreviewKey();
+        }
+        boolean hasPopup = !TextUtils.isEmpty(popupText) || mPopupPreview != null;
         mPopupView.setVisibility(hasPopup ? View.VISIBLE : View.INVISIBLE);
         if (hasPopup) {
+            if (popupText == null) {
+                // TextView.getText() never returns null.
+                popupText = "";
+            }
             FrameLayout.LayoutParams popupLayoutParams = (FrameLayout.LayoutParams)
                     mPopupView.getLayoutParams();
-            if (!Objects.equals(mPopupView.getText(), popupText)) {
+            if (!Objects.equals(mPopupView.getText(), popupText) || mPopupPreviewChanged) {
                 mPopupView.setText(popupText);
+                mPopupPreviewChanged = false;
                 int widthMeasureSpec = ViewGroup.getChildMeasureSpec(
                         View.MeasureSpec.makeMeasureSpec(viewWidth, View.MeasureSpec.EXACTLY),
                         padding.left + padding.right + mThumbWidth + popupLayoutParams.leftMargin
@@ -212,12 +457,13 @@ public class FastScroller {
                         padding.top + padding.bottom + popupLayoutParams.topMargin
                                 + popupLayoutParams.bottomMargin, popupLayoutParams.height);
                 mPopupView.measure(widthMeasureSpec, heightMeasureSpec);
+                mDragStats.onPopupMeasure();
             }
             int popupWidth = mPopupView.getMeasuredWidth();
             int popupHeight = mPopupView.getMeasuredHeight();
-            int popupLeft = isLayoutRtl ? padding.left + mThumbWidth + popupLayoutParams.leftMargin
-                    : viewWidth - padding.right - mThumbWidth - popupLayoutParams.rightMargin
-                    - popupWidth;
+            int popupLeft = PopupGeometry.getPopupLeft(isLayoutRtl, viewWidth, padding.left,
+                    padding.right, mThumbWidth, popupLayoutParams.leftMargin,
+                    popupLayoutParams.rightMargin, popupWidth);
             int popupAnchorY;
             switch (popupLayoutParams.gravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
                 case Gravity.LEFT:
@@ -247,19 +493,76 @@ public class FastScroller {
                     thumbAnchorY = mThumbHeight - mThumbView.getPaddingBottom();
                     break;
             }
-            int popupTop = MathUtils.clamp(thumbTop + thumbAnchorY - popupAnchorY,
-                    padding.top + popupLayoutParams.topMargin,
-                    viewHeight - padding.bottom - popupLayoutParams.bottomMargin - popupHeight);
+            int popupTop = PopupGeometry.getPopupTop(thumbTop, thumbAnchorY, popupAnchorY,
+                    viewHeight, padding.top, padding.bottom, popupLayoutParams.topMargin,
+                    popupLayoutParams.bottomMargin, popupHeight);
             layoutView(mPopupView, popupLeft, popupTop, popupLeft + popupWidth,
                     popupTop + popupHeight);
         }
     }
 
+    private void updatePopupPreviewKey() {
+        Object popupPreviewKey;
+        if (mScrubScrollOffset != NO_SCROLL_OFFSET) {
+            popupPreviewKey = mViewHelper.getPopupPreviewKeyForScrollOffset(mScrubScrollOffset);
+        } else {
+            int firstPosition = getScrollState().firstPosition;
+            popupPreviewKey = firstPosition != ScrollState.NO_POSITION
+                    ? mViewHelper.getPopupPreviewKeyForPosition(firstPosition)
+                    : mViewHelper.getPopupPreviewKey();
+        }
+        if (Objects.equals(mPopupPreviewKey, popupPreviewKey)) {
+            return;
+        }
+        mPopupPreviewKey = popupPreviewKey;
+        if (popupPreviewKey == null) {
+            mPopupPreviewLoader.cancel();
+            setPopupPreview(null);
+            return;
+        }
+        // Keep showing the previous preview until the new one is loaded.
+        Bitmap popupPreview = mPopupPreviewLoader.load(popupPreviewKey);
+        if (popupPreview != null) {
+            setPopupPreview(popupPreview);
+        }
+    }
+
+    private void setPopupPreview(@Nullable Bitmap popupPreview) {
+        if (mPopupPreview == popupPreview) {
+            return;
+        }
+        mPopupPreview = popupPreview;
+        Drawable popupPreviewDrawable;
+        if (popupPreview != null) {
+            popupPreviewDrawable = new BitmapDrawable(mView.getResources(), popupPreview);
+            popupPreviewDrawable.setBounds(0, 0, mPopupPreviewSize, mPopupPreviewSize);
+        } else {
+            popupPreviewDrawable = null;
+        }
+        mPopupView.setCompoundDrawables(null, popupPreviewDrawable, null, null);
+        mPopupPreviewChanged = true;
+        mView.invalidate();
+    }
+
     private void updateScrollbarState() {
         int scrollOffsetRange = getScrollOffsetRange();
         mScrollbarEnabled = scrollOffsetRange > 0;
-        mThumbOffset = mScrollbarEnabled ? (int) ((long) getThumbOffsetRange()
-                * mViewHelper.getScrollOffset() / scrollOffsetRange) : 0;
+        int scrollOffset = mScrubScrollOffset != NO_SCROLL_OFFSET ? mScrubScrollOffset
+                : getScrollState().scrollOffset;
+        int thumbOffsetRange = getThumbOffsetRange();
+        mExactThumbOffset = mScrollbarEnabled ? ScrollbarGeometry.getThumbOffset(scrollOffset,
+                scrollOffsetRange, thumbOffsetRange) : 0;
+        // The thumb follows the finger exactly when dragging.
+        if (mThumbOffsetReconciler != null && mScrollbarEnabled && !mDragging) {
+            mThumbOffset = mThumbOffsetReconciler.reconcile(scrollOffset, scrollOffsetRange,
+                    thumbOffsetRange);
+        } else {
+            mThumbOffset = mExactThumbOffset;
+        }
+    }
+
+    int getThumbOffset() {
+        return mThumbOffset;
     }
 
     private void layoutView(@NonNull View view, int left, int top, int right, int bottom) {
@@ -270,13 +573,11 @@ public class FastScroller {
 
     private void onScrollChanged() {
 
-        updateScrollbarState();
-        if (!mScrollbarEnabled) {
-            return;
-        }
-
-        mAnimationHelper.showScrollbar(mTrackView, mThumbView);
-        postAutoHideScrollbar();
+        // Show the scrollbar with the scroll state of the upcoming frame, instead of computing it
+        // once more here.
+        mScrollStateValid = false;
+        mShowScrollbarPending = true;
+        mView.invalidate();
     }
 
     private boolean onTouchEvent(@NonNull MotionEvent event) {
@@ -285,6 +586,11 @@ public class FastScroller {
             return false;
         }
 
+        if (mDragging) {
+            mDragStats.onTouchEvent();
+        }
+
+        boolean wasDragging = mDragging;
         float eventX = event.getX();
         float eventY = event.getY();
         Rect padding = getPadding();
@@ -296,7 +602,7 @@ public class FastScroller {
 
                 if (mThumbView.getAlpha() > 0 && isInViewTouchTarget(mThumbView, eventX, eventY)) {
                     mDragStartY = eventY;
-                    mDragStartThumbOffset = mThumbOffset;
+                    mDragStartThumbOffset = mExactThumbOffset;
                     setDragging(true);
                 }
                 break;
@@ -306,32 +612,68 @@ public class FastScroller {
                         && Math.abs(eventY - mDownY) > mTouchSlop) {
                     if (isInViewTouchTarget(mThumbView, mDownX, mDownY)) {
                         mDragStartY = mLastY;
-                        mDragStartThumbOffset = mThumbOffset;
+                        mDragStartThumbOffset = mExactThumbOffset;
                     } else {
                         mDragStartY = eventY;
                         mDragStartThumbOffset = (int) (eventY - padding.top - mThumbHeight / 2f);
-                        scrollToThumbOffset(mDragStartThumbOffset);
+                        // Don't animate the jump, because the drag that follows would cancel the
+                        // animation with its next scroll anyway.
+                        scrollToThumbOffset(mDragStartThumbOffset, false);
                     }
                     setDragging(true);
                 }
 
                 if (mDragging) {
-                    int thumbOffset = mDragStartThumbOffset + (int) (eventY - mDragStartY);
-                    scrollToThumbOffset(thumbOffset);
+                    // Filter out tremor of a held finger, which would otherwise cause a new
+                    // layout for every sub-pixel movement.
+                    float dragY = mDragFilter.filter(mMotionPredictionEnabled ? predictY(event)
+                            : eventY);
+                    drag(eventX, dragY, event.getEventTime());
                 }
                 break;
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
 
+                if (mDragging && mMotionPredictionEnabled
+                        && event.getAction() == MotionEvent.ACTION_UP) {
+                    // The last move may have overshot with the prediction, so end exactly where the
+                    // finger is lifted.
+                    drag(eventX, eventY, event.getEventTime());
+                }
+
+                if (mScrubScrollOffset != NO_SCROLL_OFFSET) {
+                    int scrubScrollOffset = mScrubScrollOffset;
+                    mScrubScrollOffset = NO_SCROLL_OFFSET;
+                    if (event.getAction() == MotionEvent.ACTION_UP) {
+                        performScrollTo(scrubScrollOffset, true);
+                    } else {
+                        mView.invalidate();
+                    }
+                }
                 setDragging(false);
                 break;
         }
 
+        if (!wasDragging && mDragging) {
+            // Receive touch events as soon as they arrive instead of batched for each frame, so
+            // that the content trails the finger less. This only lasts for the current gesture.
+            mView.requestUnbufferedDispatch(event);
+        }
+
         mLastY = eventY;
 
         return mDragging;
     }
 
+    private float predictY(@NonNull MotionEvent event) {
+        for (int i = 0, count = event.getHistorySize(); i < count; ++i) {
+            mMotionPredictor.addSample(event.getHistoricalEventTime(i), event.getHistoricalY(i));
+        }
+        long eventTime = event.getEventTime();
+        mMotionPredictor.addSample(eventTime, event.getY());
+        return mMotionPredictor.predict(eventTime + MOTION_PREDICTION_MILLIS);
+    }
+
     private boolean isInView(@NonNull View view, float x, float y) {
         int scrollX = mView.getScrollX();
         int scrollY = mView.getScrollY();
@@ -350,39 +692,106 @@ public class FastScroller {
 
     private boolean isInTouchTarget(float position, int viewStart, int viewEnd, int parentStart,
                                     int parentEnd) {
-        int viewSize = viewEnd - viewStart;
-        if (viewSize >= mMinTouchTargetSize) {
-            return position >= viewStart && position < viewEnd;
-        }
-        int touchTargetStart = viewStart - (mMinTouchTargetSize - viewSize) / 2;
-        if (touchTargetStart < parentStart) {
-            touchTargetStart = parentStart;
-        }
-        int touchTargetEnd = touchTargetStart + mMinTouchTargetSize;
-        if (touchTargetEnd > parentEnd) {
-            touchTargetEnd = parentEnd;
-            touchTargetStart = touchTargetEnd - mMinTouchTargetSize;
-            if (touchTargetStart < parentStart) {
-                touchTargetStart = parentStart;
-            }
+        return ScrollbarGeometry.isInTouchTarget(position, viewStart, viewEnd, parentStart,
+                parentEnd, mMinTouchTargetSize);
+    }
+
+    private void drag(float eventX, float dragY, long eventTime) {
+        if (mPrecisionDragEnabled) {
+            dragPrecisely(eventX, dragY, eventTime);
+        } else {
+            int thumbOffset = mDragStartThumbOffset + (int) (dragY - mDragStartY);
+            scrollToThumbOffset(thumbOffset, false);
         }
-        return position >= touchTargetStart && position < touchTargetEnd;
     }
 
-    private void scrollToThumbOffset(int thumbOffset) {
-        int thumbOffsetRange = getThumbOffsetRange();
-        thumbOffset = MathUtils.clamp(thumbOffset, 0, thumbOffsetRange);
-        int scrollOffset = (int) ((long) getScrollOffsetRange() * thumbOffset / thumbOffsetRange);
-        mViewHelper.scrollTo(scrollOffset);
+    private void dragPrecisely(float eventX, float dragY, long eventTime) {
+        float deltaY = dragY - mLastDragY;
+        if (mLastDragTime != 0 && eventTime > mLastDragTime) {
+            float velocity = Math.abs(deltaY) / (eventTime - mLastDragTime);
+            mDragVelocity = (mDragVelocity + velocity) / 2;
+        }
+        mLastDragY = dragY;
+        mLastDragTime = eventTime;
+        if (deltaY == 0) {
+            return;
+        }
+        int scrollX = mView.getScrollX();
+        float distanceFromTrack = Math.max(mTrackView.getLeft() - scrollX - eventX,
+                eventX - (mTrackView.getRight() - scrollX));
+        float scale = PrecisionDrag.getScale(distanceFromTrack, mPrecisionDragBandSize,
+                mDragVelocity, mPrecisionDragFastVelocity);
+        int scrollOffsetRange = getScrollOffsetRange();
+        mDragScrollOffset += PrecisionDrag.getScrollOffsetDelta(deltaY, getThumbOffsetRange(),
+                scrollOffsetRange, scale);
+        mDragScrollOffset = Math.max(0, Math.min(mDragScrollOffset, scrollOffsetRange));
+        scrollToScrollOffset((int) mDragScrollOffset, false);
+    }
+
+    /**
+     * @param smooth whether this is a discrete jump instead of following the finger, which may
+     *               animate
+     */
+    private void scrollToThumbOffset(int thumbOffset, boolean smooth) {
+        scrollToScrollOffset(ScrollbarGeometry.getScrollOffset(thumbOffset, getThumbOffsetRange(),
+                getScrollOffsetRange()), smooth);
+    }
+
+    private void scrollToScrollOffset(int scrollOffset, boolean smooth) {
+        if (mScrubModeEnabled) {
+            mScrubScrollOffset = scrollOffset;
+            mView.invalidate();
+            return;
+        }
+        performScrollTo(scrollOffset, smooth);
+    }
+
+    private void performScrollTo(int scrollOffset, boolean smooth) {
+        // Scrolling to the same offset again would only cause a redundant layout. The scroll state
+        // snapshot may be stale within a frame, so only our own last target is compared against.
+        if (scrollOffset == mLastScrollToOffset) {
+            return;
+        }
+        mLastScrollToOffset = scrollOffset;
+        mDragStats.onScrollTo();
+        if (mDebugHud != null) {
+            mDebugHud.onScrollToStart();
+            viewHelperScrollTo(scrollOffset, smooth);
+            mDebugHud.onScrollToEnd(scrollOffset);
+        } else {
+            viewHelperScrollTo(scrollOffset, smooth);
+        }
+    }
+
+    private void viewHelperScrollTo(int scrollOffset, boolean smooth) {
+        if (smooth) {
+            mViewHelper.smoothScrollTo(scrollOffset);
+        } else {
+            mViewHelper.scrollTo(scrollOffset);
+        }
+        mScrollStateValid = false;
+    }
+
+    @NonNull
+    private ScrollState getScrollState() {
+        if (!mScrollStateValid) {
+            mScrollState.set(0, 0, mView.getHeight(), ScrollState.NO_POSITION);
+            mViewHelper.getScrollState(mScrollState);
+            mScrollStateValid = true;
+        }
+        return mScrollState;
     }
 
     private int getScrollOffsetRange() {
-        return mViewHelper.getScrollRange() - mView.getHeight();
+        ScrollState scrollState = getScrollState();
+        return ScrollbarGeometry.getScrollOffsetRange(scrollState.scrollRange,
+                scrollState.viewportHeight);
     }
 
     private int getThumbOffsetRange() {
         Rect padding = getPadding();
-        return mView.getHeight() - padding.top - padding.bottom - mThumbHeight;
+        return ScrollbarGeometry.getThumbOffsetRange(mView.getHeight(), padding.top,
+                padding.bottom, mThumbHeight);
     }
 
     private void setDragging(boolean dragging) {
@@ -399,6 +808,45 @@ public class FastScroller {
         mTrackView.setPressed(mDragging);
         mThumbView.setPressed(mDragging);
 
+        if (mDragging) {
+            if (mThumbOffsetReconciler != null) {
+                // Dragging maps the thumb offset to the scroll offset exactly.
+                mThumbOffsetReconciler.reset();
+            }
+            mDragFilter.reset(mDragStartY);
+            mMotionPredictor.reset();
+            // Start from the exact scroll offset instead of the one derived from the thumb offset,
+            // which can be off by a lot for long content.
+            if (mScrubScrollOffset != NO_SCROLL_OFFSET) {
+                mDragScrollOffset = mScrubScrollOffset;
+            } else if (mLastScrollToOffset != NO_SCROLL_OFFSET) {
+                mDragScrollOffset = mLastScrollToOffset;
+            } else {
+                mDragScrollOffset = getScrollState().scrollOffset;
+            }
+            mLastDragY = mDragStartY;
+            mLastDragTime = 0;
+            mDragVelocity = 0;
+            mDragStats.reset();
+            if (mDebugHud != null || mOnDragStatsListener != null) {
+                mView.getViewTreeObserver().addOnGlobalLayoutListener(mOnGlobalLayoutListener);
+                mObservingLayouts = true;
+            }
+        } else {
+            mLastScrollToOffset = NO_SCROLL_OFFSET;
+            if (mObservingLayouts) {
+                mView.getViewTreeObserver().removeOnGlobalLayoutListener(mOnGlobalLayoutListener);
+                mObservingLayouts = false;
+            }
+            if (mOnDragStatsListener != null) {
+                mOnDragStatsListener.onDragStats(mDragStats);
+            }
+        }
+        mViewHelper.onDraggingChanged(mDragging);
+        if (mDebugHud != null) {
+            mDebugHud.setDragging(mDragging);
+        }
+
         if (mDragging) {
             cancelAutoHideScrollbar();
             mAnimationHelper.showScrollbar(mTrackView, mThumbView);
@@ -412,7 +860,7 @@ public class FastScroller {
     private void postAutoHideScrollbar() {
         cancelAutoHideScrollbar();
         if (mAnimationHelper.isScrollbarAutoHideEnabled()) {
-            mView.postDelayed(mAutoHideScrollbarRunnable,
+            mScheduler.postDelayed(mAutoHideScrollbarRunnable,
                     mAnimationHelper.getScrollbarAutoHideDelayMillis());
         }
     }
@@ -425,7 +873,7 @@ public class FastScroller {
     }
 
     private void cancelAutoHideScrollbar() {
-        mView.removeCallbacks(mAutoHideScrollbarRunnable);
+        mScheduler.removeCallbacks(mAutoHideScrollbarRunnable);
     }
 
     public interface ViewHelper {
@@ -440,12 +888,112 @@ public class FastScroller {
 
         int getScrollOffset();
 
+        /**
+         * Fill the scroll state in one pass, which is then shared for the rest of the frame.
+         * Implementations can override this to avoid repeating the work shared by
+         * {@link #getScrollRange()} and {@link #getScrollOffset()}.
+         *
+         * @param outState receives the scroll state, with the viewport height already set to the
+         *                 height of the view, and the first position to
+         *                 {@link ScrollState#NO_POSITION}
+         */
+        default void getScrollState(@NonNull ScrollState outState) {
+            outState.scrollRange = getScrollRange();
+            outState.scrollOffset = getScrollOffset();
+        }
+
         void scrollTo(int offset);
 
+        /**
+         * Scroll to the offset for a discrete jump, e.g. when the track is tapped, as opposed to
+         * following the finger while dragging. Implementations may animate the scroll when it's
+         * cheaper than a full relayout.
+         */
+        default void smoothScrollTo(int offset) {
+            scrollTo(offset);
+        }
+
         @Nullable
         default CharSequence getPopupText() {
             return null;
         }
+
+        /**
+         * @return the popup text for the content at the scroll offset, which isn't necessarily the
+         *         current one, e.g. when dragging in scrub mode
+         */
+        @Nullable
+        default CharSequence getPopupTextForScrollOffset(int scrollOffset) {
+            return null;
+        }
+
+        /**
+         * @param position the first position from {@link #getScrollState(ScrollState)}
+         * @return the popup text for the content at the position
+         */
+        @Nullable
+        default CharSequence getPopupTextForPosition(int position) {
+            return getPopupText();
+        }
+
+        /**
+         * Write the scroll model, e.g. the measured item heights, for restoring it later.
+         *
+         * @return whether the scroll model is supported
+         */
+        default boolean saveScrollModel(@NonNull DataOutputStream output) throws IOException {
+            return false;
+        }
+
+        /**
+         * @return whether the scroll model was restored
+         */
+        default boolean restoreScrollModel(@NonNull DataInputStream input) throws IOException {
+            return false;
+        }
+
+        /**
+         * Called when the user starts or stops dragging the scrollbar.
+         */
+        default void onDraggingChanged(boolean dragging) {}
+
+        /**
+         * @return the key for the popup preview of the current content, which is passed to
+         *         {@link #loadPopupPreview(Object, int, int)} unless the preview is already cached
+         */
+        @Nullable
+        default Object getPopupPreviewKey() {
+            return null;
+        }
+
+        @Nullable
+        default Object getPopupPreviewKeyForScrollOffset(int scrollOffset) {
+            return null;
+        }
+
+        /**
+         * @param position the first position from {@link #getScrollState(ScrollState)}
+         */
+        @Nullable
+        default Object getPopupPreviewKeyForPosition(int position) {
+            return getPopupPreviewKey();
+        }
+
+        @Nullable
+        @WorkerThread
+        default Bitmap loadPopupPreview(@NonNull Object key, int width, int height) {
+            return null;
+        }
+    }
+
+    public interface OnDragStatsListener {
+
+        /**
+         * Called when a drag of the scrollbar ends.
+         *
+         * @param stats the stats for the drag, which are only valid until this method returns
+         */
+        void onDragStats(@NonNull DragStats stats);
     }
 
     public interface AnimationHelper {
@@ -29,6 +29,8 @@ import androidx.annotation.Nullable;
 import androidx.core.util.Consumer;
 import androidx.core.widget.NestedScrollView;
 import androidx.recyclerview.widget.RecyclerView;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+import me.zhanghai.android.fastscroll.core.Scheduler;
 
 public class FastScrollerBuilder {
 
@@ -41,6 +43,15 @@ public class FastScrollerBuilder {
     @Nullable
     private PopupTextProvider mPopupTextProvider;
 
+    @Nullable
+    private PopupPreviewProvider mPopupPreviewProvider;
+
+    @Nullable
+    private RunLengthHeightStore mRowHeightStore;
+
+    @Nullable
+    private ItemHeightMeasurer mItemHeightMeasurer;
+
     @Nullable
     private Rect mPadding;
 
@@ -56,6 +67,22 @@ public class FastScrollerBuilder {
     @Nullable
     private FastScroller.AnimationHelper mAnimationHelper;
 
+    @Nullable
+    private Scheduler mScheduler;
+
+    private boolean mScrubModeEnabled;
+
+    private boolean mMotionPredictionEnabled;
+
+    private boolean mScrollRangeReconciliationEnabled;
+
+    private boolean mPrecisionDragEnabled;
+
+    private boolean mDebugHudEnabled;
+
+    @Nullable
+    private FastScroller.OnDragStatsListener mOnDragStatsListener;
+
     public FastScrollerBuilder(@NonNull ViewGroup view) {
         mView = view;
         useDefaultStyle();
@@ -73,6 +100,36 @@ public class FastScrollerBuilder {
         return this;
     }
 
+    @NonNull
+    public FastScrollerBuilder setPopupPreviewProvider(
+            @Nullable PopupPreviewProvider popupPreviewProvider) {
+        mPopupPreviewProvider = popupPreviewProvider;
+        return this;
+    }
+
+    /**
+     * Set a store for the measured height of each row of a {@link RecyclerView}, so that the
+     * scroll offset is exact for the rows that have been measured. The store is owned by the
+     * caller, who should close it when it's no longer needed.
+     */
+    @NonNull
+    public FastScrollerBuilder setRowHeightStore(@Nullable RunLengthHeightStore rowHeightStore) {
+        mRowHeightStore = rowHeightStore;
+        return this;
+    }
+
+    /**
+     * Set a measurer for filling the heights of {@link RecyclerView} rows that haven't been shown
+     * yet in the background, starting near the viewport or the drag target. This requires a row
+     * height store set with {@link #setRowHeightStore(RunLengthHeightStore)}.
+     */
+    @NonNull
+    public FastScrollerBuilder setItemHeightMeasurer(
+            @Nullable ItemHeightMeasurer itemHeightMeasurer) {
+        mItemHeightMeasurer = itemHeightMeasurer;
+        return this;
+    }
+
     @NonNull
     public FastScrollerBuilder setPadding(int left, int top, int right, int bottom) {
         if (mPadding == null) {
@@ -140,15 +197,74 @@ public class FastScrollerBuilder {
     }
 
     public void disableScrollbarAutoHide() {
-        DefaultAnimationHelper animationHelper = new DefaultAnimationHelper(mView);
+        DefaultAnimationHelper animationHelper = new DefaultAnimationHelper(mView, mScheduler);
         animationHelper.setScrollbarAutoHideEnabled(false);
         mAnimationHelper = animationHelper;
     }
 
+    /**
+     * Set the clock and scheduler for auto hide, animations and other timing, e.g. a
+     * {@link me.zhanghai.android.fastscroll.core.VirtualScheduler} for tests and benchmarks.
+     * <p>
+     * This should be called before {@link #setAnimationHelper(FastScroller.AnimationHelper)} or
+     * {@link #disableScrollbarAutoHide()}, and a custom animation helper needs to use the scheduler
+     * on its own.
+     */
+    @NonNull
+    public FastScrollerBuilder setScheduler(@Nullable Scheduler scheduler) {
+        mScheduler = scheduler;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setScrubModeEnabled(boolean enabled) {
+        mScrubModeEnabled = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setScrollRangeReconciliationEnabled(boolean enabled) {
+        mScrollRangeReconciliationEnabled = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setMotionPredictionEnabled(boolean enabled) {
+        mMotionPredictionEnabled = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setPrecisionDragEnabled(boolean enabled) {
+        mPrecisionDragEnabled = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setDebugHudEnabled(boolean enabled) {
+        mDebugHudEnabled = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FastScrollerBuilder setOnDragStatsListener(
+            @Nullable FastScroller.OnDragStatsListener listener) {
+        mOnDragStatsListener = listener;
+        return this;
+    }
+
     @NonNull
     public FastScroller build() {
-        return new FastScroller(mView, getOrCreateViewHelper(), mPadding, mTrackDrawable,
-                mThumbDrawable, mPopupStyle, getOrCreateAnimationHelper());
+        FastScroller fastScroller = new FastScroller(mView, getOrCreateViewHelper(), mPadding,
+                mTrackDrawable, mThumbDrawable, mPopupStyle, getOrCreateAnimationHelper(),
+                getOrCreateScheduler());
+        fastScroller.setScrubModeEnabled(mScrubModeEnabled);
+        fastScroller.setMotionPredictionEnabled(mMotionPredictionEnabled);
+        fastScroller.setScrollRangeReconciliationEnabled(mScrollRangeReconciliationEnabled);
+        fastScroller.setPrecisionDragEnabled(mPrecisionDragEnabled);
+        fastScroller.setDebugHudEnabled(mDebugHudEnabled);
+        fastScroller.setOnDragStatsListener(mOnDragStatsListener);
+        return fastScroller;
     }
 
     @NonNull
@@ -159,7 +275,11 @@ public class FastScrollerBuilder {
         if (mView instanceof ViewHelperProvider) {
             return ((ViewHelperProvider) mView).getViewHelper();
         } else if (mView instanceof RecyclerView) {
-            return new RecyclerViewHelper((RecyclerView) mView, mPopupTextProvider);
+            RecyclerViewHelper viewHelper = new RecyclerViewHelper((RecyclerView) mView,
+                    mPopupTextProvider, mPopupPreviewProvider);
+            viewHelper.setRowHeightStore(mRowHeightStore);
+            viewHelper.setItemHeightMeasurer(mItemHeightMeasurer);
+            return viewHelper;
         } else if (mView instanceof NestedScrollView) {
             throw new UnsupportedOperationException("Please use "
                     + FastScrollNestedScrollView.class.getSimpleName() + " instead of "
@@ -183,6 +303,14 @@ public class FastScrollerBuilder {
         if (mAnimationHelper != null) {
             return mAnimationHelper;
         }
-        return new DefaultAnimationHelper(mView);
+        return new DefaultAnimationHelper(mView, mScheduler);
+    }
+
+    @NonNull
+    private Scheduler getOrCreateScheduler() {
+        if (mScheduler != null) {
+            return mScheduler;
+        }
+        return new ViewScheduler(mView);
     }
 }
@@ -21,9 +21,7 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
 import androidx.annotation.AttrRes;
 import androidx.annotation.NonNull;
@@ -70,23 +68,69 @@ public class FixOnItemTouchListenerRecyclerView extends RecyclerView {
         mOnItemTouchDispatcher.removeListener(listener);
     }
 
-    private static class OnItemTouchDispatcher implements OnItemTouchListener {
+    /**
+     * An {@link OnItemTouchListener} that only cares about gestures starting in a region of the
+     * {@link RecyclerView}, so that it isn't offered touch events for other gestures at all.
+     */
+    public interface RegionOnItemTouchListener extends OnItemTouchListener {
+
+        /**
+         * @return whether a gesture starting at the point may be of interest to this listener
+         */
+        boolean isInTouchRegion(@NonNull RecyclerView recyclerView, float x, float y);
+
+        /**
+         * @return the priority of this listener, where listeners with a higher priority are
+         *         offered touch events first, and listeners with the same priority are offered
+         *         touch events in the order they were added
+         */
+        default int getPriority() {
+            return 0;
+        }
+
+        /**
+         * @return whether this listener should stop receiving touch events for a gesture, once the
+         *         gesture leaves its region before it has intercepted the gesture
+         */
+        default boolean shouldStopTrackingOutsideRegion() {
+            return false;
+        }
+    }
+
+    static class OnItemTouchDispatcher implements OnItemTouchListener {
 
         @NonNull
         private final List<OnItemTouchListener> mListeners = new ArrayList<>();
 
+        // A list instead of a LinkedHashSet, because there are only a few listeners and we don't
+        // want to allocate an iterator or a node for every event.
+        @NonNull
+        private final List<OnItemTouchListener> mTrackingListeners = new ArrayList<>();
+
+        // The listeners whose region contains the start of the current gesture.
         @NonNull
-        private final Set<OnItemTouchListener> mTrackingListeners = new LinkedHashSet<>();
+        private final List<OnItemTouchListener> mActiveListeners = new ArrayList<>();
 
         @Nullable
         private OnItemTouchListener mInterceptingListener;
 
         public void addListener(@NonNull OnItemTouchListener listener) {
-            mListeners.add(listener);
+            int priority = getPriority(listener);
+            int index = mListeners.size();
+            while (index > 0 && getPriority(mListeners.get(index - 1)) < priority) {
+                --index;
+            }
+            mListeners.add(index, listener);
+        }
+
+        private static int getPriority(@NonNull OnItemTouchListener listener) {
+            return listener instanceof RegionOnItemTouchListener
+                    ? ((RegionOnItemTouchListener) listener).getPriority() : 0;
         }
 
         public void removeListener(@NonNull OnItemTouchListener listener) {
             mListeners.remove(listener);
+            mActiveListeners.remove(listener);
             mTrackingListeners.remove(listener);
             if (mInterceptingListener == listener) {
                 mInterceptingListener = null;
@@ -98,7 +142,13 @@ public class FixOnItemTouchListenerRecyclerView extends RecyclerView {
         public boolean onInterceptTouchEvent(@NonNull RecyclerView recyclerView,
                                              @NonNull MotionEvent event) {
             int action = event.getAction();
-            for (OnItemTouchListener listener : mListeners) {
+            if (action == MotionEvent.ACTION_DOWN) {
+                updateActiveListeners(recyclerView, event);
+            } else if (action == MotionEvent.ACTION_MOVE) {
+                removeActiveListenersOutsideRegion(recyclerView, event);
+            }
+            for (int i = 0, count = mActiveListeners.size(); i < count; ++i) {
+                OnItemTouchListener listener = mActiveListeners.get(i);
                 boolean intercepted = listener.onInterceptTouchEvent(recyclerView, event);
                 if (action == MotionEvent.ACTION_CANCEL) {
                     mTrackingListeners.remove(listener);
@@ -107,20 +157,62 @@ public class FixOnItemTouchListenerRecyclerView extends RecyclerView {
                 if (intercepted) {
                     mTrackingListeners.remove(listener);
                     event.setAction(MotionEvent.ACTION_CANCEL);
-                    for (OnItemTouchListener trackingListener : mTrackingListeners) {
-                        trackingListener.onInterceptTouchEvent(recyclerView, event);
+                    for (int j = 0, trackingCount = mTrackingListeners.size(); j < trackingCount;
+                            ++j) {
+                        mTrackingListeners.get(j).onInterceptTouchEvent(recyclerView, event);
                     }
                     event.setAction(action);
                     mTrackingListeners.clear();
                     mInterceptingListener = listener;
                     return true;
-                } else {
+                } else if (!mTrackingListeners.contains(listener)) {
                     mTrackingListeners.add(listener);
                 }
             }
             return false;
         }
 
+        private void updateActiveListeners(@NonNull RecyclerView recyclerView,
+                                           @NonNull MotionEvent event) {
+            mActiveListeners.clear();
+            mTrackingListeners.clear();
+            float x = event.getX();
+            float y = event.getY();
+            for (int i = 0, count = mListeners.size(); i < count; ++i) {
+                OnItemTouchListener listener = mListeners.get(i);
+                if (listener instanceof RegionOnItemTouchListener
+                        && !((RegionOnItemTouchListener) listener).isInTouchRegion(recyclerView,
+                        x, y)) {
+                    continue;
+                }
+                mActiveListeners.add(listener);
+            }
+        }
+
+        private void removeActiveListenersOutsideRegion(@NonNull RecyclerView recyclerView,
+                                                        @NonNull MotionEvent event) {
+            float x = event.getX();
+            float y = event.getY();
+            for (int i = mActiveListeners.size() - 1; i >= 0; --i) {
+                OnItemTouchListener listener = mActiveListeners.get(i);
+                if (!(listener instanceof RegionOnItemTouchListener)) {
+                    continue;
+                }
+                RegionOnItemTouchListener regionListener = (RegionOnItemTouchListener) listener;
+                if (!regionListener.shouldStopTrackingOutsideRegion()
+                        || regionListener.isInTouchRegion(recyclerView, x, y)) {
+                    continue;
+                }
+                mActiveListeners.remove(i);
+                if (mTrackingListeners.remove(listener)) {
+                    int action = event.getAction();
+                    event.setAction(MotionEvent.ACTION_CANCEL);
+                    listener.onInterceptTouchEvent(recyclerView, event);
+                    event.setAction(action);
+                }
+            }
+        }
+
         @Override
         public void onTouchEvent(@NonNull RecyclerView recyclerView, @NonNull MotionEvent event) {
             if (mInterceptingListener == null) {
@@ -135,8 +227,8 @@ public class FixOnItemTouchListenerRecyclerView extends RecyclerView {
 
         @Override
         public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
-            for (OnItemTouchListener listener : mListeners) {
-                listener.onRequestDisallowInterceptTouchEvent(disallowIntercept);
+            for (int i = 0, count = mListeners.size(); i < count; ++i) {
+                mListeners.get(i).onRequestDisallowInterceptTouchEvent(disallowIntercept);
             }
         }
     }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import androidx.annotation.WorkerThread;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+
+/**
+ * Measures item heights without views, e.g. from the item data with
+ * {@link android.text.StaticLayout} for text-only items, so that the heights of items that haven't
+ * been shown yet can be filled in the background.
+ * <p>
+ * Implementations are called on background threads, and need to be thread-safe.
+ */
+public interface ItemHeightMeasurer {
+
+    /**
+     * @param width the width available to the item
+     * @return the height of the item including its decorations and margins, or
+     *         {@link RunLengthHeightStore#UNKNOWN_HEIGHT} if it can't be measured without views
+     */
+    @WorkerThread
+    int measureItemHeight(int position, int width);
+}
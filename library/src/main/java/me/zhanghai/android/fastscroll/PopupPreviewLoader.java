@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Consumer;
+
+/**
+ * Loads popup previews off the main thread, into a bitmap cache shared across all fast scrollers.
+ * <p>
+ * Only one preview is loaded at a time for each loader, and only the latest requested preview is
+ * loaded next, so that fast drags don't queue up loads for positions that have already been left
+ * behind.
+ */
+class PopupPreviewLoader {
+
+    private static final String TAG = PopupPreviewLoader.class.getSimpleName();
+
+    private static final int CACHE_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static final int THREAD_COUNT = 2;
+
+    @NonNull
+    private static final LruCache<Object, Bitmap> sCache = new LruCache<Object, Bitmap>(
+            CACHE_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(@NonNull Object key, @NonNull Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+    };
+
+    @NonNull
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(THREAD_COUNT,
+            THREAD_COUNT, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "FastScroller popup preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    private final View mView;
+    @NonNull
+    private final FastScroller.ViewHelper mViewHelper;
+    private final int mSize;
+    @NonNull
+    private final Consumer<Bitmap> mOnPreviewLoaded;
+
+    @Nullable
+    private Object mRequestedKey;
+    private boolean mLoading;
+
+    public PopupPreviewLoader(@NonNull View view, @NonNull FastScroller.ViewHelper viewHelper,
+                              int size, @NonNull Consumer<Bitmap> onPreviewLoaded) {
+        mView = view;
+        mViewHelper = viewHelper;
+        mSize = size;
+        mOnPreviewLoaded = onPreviewLoaded;
+    }
+
+    /**
+     * @return the cached preview for the key, or {@code null} if it will be loaded and then passed
+     *         to the callback
+     */
+    @MainThread
+    @Nullable
+    public Bitmap load(@NonNull Object key) {
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            mRequestedKey = null;
+            return bitmap;
+        }
+        mRequestedKey = key;
+        if (!mLoading) {
+            startLoading(key);
+        }
+        return null;
+    }
+
+    @MainThread
+    public void cancel() {
+        mRequestedKey = null;
+    }
+
+    @MainThread
+    private void startLoading(@NonNull Object key) {
+        mLoading = true;
+        sExecutor.execute(() -> {
+            Bitmap bitmap = null;
+            try {
+                bitmap = mViewHelper.loadPopupPreview(key, mSize, mSize);
+            } catch (Throwable t) {
+                // A failed preview shouldn't stop later ones from loading.
+                Log.e(TAG, "Failed to load popup preview for " + key, t);
+            } finally {
+                Bitmap loadedBitmap = bitmap;
+                mView.post(() -> onLoaded(key, loadedBitmap));
+            }
+        });
+    }
+
+    @MainThread
+    private void onLoaded(@NonNull Object key, @Nullable Bitmap bitmap) {
+        mLoading = false;
+        if (bitmap != null) {
+            sCache.put(key, bitmap);
+        }
+        Object requestedKey = mRequestedKey;
+        if (requestedKey == null) {
+            return;
+        }
+        if (Objects.equals(requestedKey, key)) {
+            mRequestedKey = null;
+            if (bitmap != null) {
+                mOnPreviewLoaded.accept(bitmap);
+            }
+            return;
+        }
+        // A newer preview was requested while we were loading.
+        Bitmap requestedBitmap = sCache.get(requestedKey);
+        if (requestedBitmap != null) {
+            mRequestedKey = null;
+            mOnPreviewLoaded.accept(requestedBitmap);
+        } else {
+            startLoading(requestedKey);
+        }
+    }
+}
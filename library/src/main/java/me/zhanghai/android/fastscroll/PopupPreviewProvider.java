@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.graphics.Bitmap;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+public interface PopupPreviewProvider {
+
+    /**
+     * @return the key for the preview image of the item at the position, which should implement
+     *         {@link Object#equals(Object)} and {@link Object#hashCode()}, and is shared across all
+     *         fast scrollers when caching previews
+     */
+    @Nullable
+    Object getPopupPreviewKey(@NonNull View view, int position);
+
+    @Nullable
+    @WorkerThread
+    Bitmap loadPopupPreview(@NonNull Object key, int width, int height);
+}
@@ -16,31 +16,222 @@
 
 package me.zhanghai.android.fastscroll;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.util.SparseIntArray;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.ConcatAdapter;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import me.zhanghai.android.fastscroll.core.ItemGeometry;
+import me.zhanghai.android.fastscroll.core.ItemHeightEstimator;
+import me.zhanghai.android.fastscroll.core.ItemOffset;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+import me.zhanghai.android.fastscroll.core.SpanRowIndex;
 
 class RecyclerViewHelper implements FastScroller.ViewHelper {
 
+    // RecyclerView.RecycledViewPool.DEFAULT_MAX_SCRAP is private, and there's no getter for the max
+    // recycled views.
+    private static final int DEFAULT_MAX_RECYCLED_VIEWS = 5;
+
+    // Targets within this many viewport heights are smooth scrolled to, and farther targets are
+    // jumped to and then settled with a smooth scroll of half a viewport height.
+    private static final int SMOOTH_SCROLL_MAX_VIEWPORTS = 2;
+    private static final float SETTLE_VIEWPORTS = 0.5f;
+    private static final int SMOOTH_SCROLL_MIN_DURATION_MILLIS = 100;
+    private static final int SMOOTH_SCROLL_MAX_DURATION_MILLIS = 250;
+
+    @NonNull
+    private static final Interpolator SMOOTH_SCROLL_INTERPOLATOR = new DecelerateInterpolator();
+
+    // The distribution of view types is sampled from at most this many evenly spaced positions.
+    private static final int MAX_VIEW_TYPE_SAMPLE_COUNT = 1024;
+
+    // The first position of rows to discard when nothing has moved.
+    private static final int NO_MOVED_POSITION = Integer.MAX_VALUE;
+
     @NonNull
     private final RecyclerView mView;
     @Nullable
     private final PopupTextProvider mPopupTextProvider;
+    @Nullable
+    private final PopupPreviewProvider mPopupPreviewProvider;
 
     @NonNull
     private final Rect mTempRect = new Rect();
 
+    @NonNull
+    private final ItemOffset mTempItemOffset = new ItemOffset();
+
+    @NonNull
+    private final int[] mTempPosition = new int[1];
+
+    @Nullable
+    private SegmentPopupPreviewKey mLastSegmentPopupPreviewKey;
+
+    @NonNull
+    private final ItemHeightEstimator mItemHeightEstimator = new ItemHeightEstimator();
+    private int mMeasuredFirstPosition = RecyclerView.NO_POSITION;
+    private int mMeasuredLastPosition = RecyclerView.NO_POSITION;
+    @Nullable
+    private RecyclerView.Adapter<?> mObservedAdapter;
+    private boolean mViewTypesChanged = true;
+    @NonNull
+    private final ConcatAdapterSegments mConcatAdapterSegments = new ConcatAdapterSegments();
+    // Positions from ConcatAdapter are already global, so a change in one segment only moves the
+    // rows from that segment on.
+    @NonNull
+    private final RecyclerView.AdapterDataObserver mAdapterDataObserver =
+            new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    mConcatAdapterSegments.onSegmentsChanged();
+                    onAdapterDataChanged(0, 0);
+                }
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    // Changed items are measured again when they become visible, but their span
+                    // sizes may have changed.
+                    onAdapterDataChanged(hasSpanSizeLookup() ? positionStart
+                            : NO_MOVED_POSITION, NO_MOVED_POSITION);
+                }
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mItemAddOrRemovePending = true;
+                    mConcatAdapterSegments.onSegmentsChanged();
+                    int measuredFirstPosition = mMeasuredFirstPosition;
+                    int measuredLastPosition = mMeasuredLastPosition;
+                    onAdapterDataChanged(positionStart, getAdapterItemCount() - positionStart
+                            - itemCount);
+                    // Items inserted before the measured items, e.g. older messages loaded at the
+                    // top, only shift them.
+                    if (measuredFirstPosition != RecyclerView.NO_POSITION
+                            && positionStart <= measuredFirstPosition) {
+                        mMeasuredFirstPosition = measuredFirstPosition + itemCount;
+                        mMeasuredLastPosition = measuredLastPosition + itemCount;
+                    }
+                }
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mItemAddOrRemovePending = true;
+                    mConcatAdapterSegments.onSegmentsChanged();
+                    onAdapterDataChanged(positionStart, getAdapterItemCount() - positionStart);
+                }
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    onAdapterDataChanged(Math.min(fromPosition, toPosition), getAdapterItemCount()
+                            - Math.max(fromPosition, toPosition) - itemCount);
+                }
+            };
+
+    @Nullable
+    private RunLengthHeightStore mRowHeightStore;
+    private int mRowHeightStoreFirstMovedPosition = NO_MOVED_POSITION;
+    // The count of items at the end that haven't moved, for a store keyed from the end.
+    private int mRowHeightStoreUnmovedEndCount = NO_MOVED_POSITION;
+    private boolean mRowHeightStoreReversed;
+
+    @NonNull
+    private final SpanRowIndex mSpanRowIndex = new SpanRowIndex();
+    private int mSpanRowIndexFirstMovedPosition = NO_MOVED_POSITION;
+    @Nullable
+    private GridLayoutManager.SpanSizeLookup mIndexedSpanSizeLookup;
+
+    @Nullable
+    private BackgroundItemMeasurer mBackgroundItemMeasurer;
+    private int mDragTargetRow = RecyclerView.NO_POSITION;
+
+    private int mPendingSettleDistance;
+
+    private boolean mScrollModelFrozen;
+    private boolean mItemAddOrRemovePending;
+    private int mLastScrollRange;
+    private int mLastScrollOffset;
+    // The number of pixels in a unit of the scroll range and offset, which is greater than 1 when
+    // the content is taller than Integer.MAX_VALUE pixels, e.g. for tens of millions of rows.
+    private double mScrollScale = 1;
+    private int mLastFirstPosition = RecyclerView.NO_POSITION;
+    @NonNull
+    private final RecyclerView.ItemAnimator.ItemAnimatorFinishedListener
+            mOnItemAnimationsFinishedListener = this::onItemAnimationsFinished;
+
+    private boolean mDragging;
+    @Nullable
+    private RecyclerView.RecycledViewPool mGrownRecycledViewPool;
+    @NonNull
+    private final SparseIntArray mGrownMaxRecycledViews = new SparseIntArray();
+    @NonNull
+    private final SparseIntArray mTempViewTypeCounts = new SparseIntArray();
+
     public RecyclerViewHelper(@NonNull RecyclerView view,
                               @Nullable PopupTextProvider popupTextProvider) {
+        this(view, popupTextProvider, null);
+    }
+
+    public RecyclerViewHelper(@NonNull RecyclerView view,
+                              @Nullable PopupTextProvider popupTextProvider,
+                              @Nullable PopupPreviewProvider popupPreviewProvider) {
         mView = view;
         mPopupTextProvider = popupTextProvider;
+        mPopupPreviewProvider = popupPreviewProvider;
+    }
+
+    /**
+     * Set a store for the measured height of each row, so that the scroll offset is exact for rows
+     * that have been measured, and only estimated for the others.
+     */
+    public void setRowHeightStore(@Nullable RunLengthHeightStore rowHeightStore) {
+        mRowHeightStore = rowHeightStore;
+        mRowHeightStoreFirstMovedPosition = 0;
+        mRowHeightStoreUnmovedEndCount = 0;
+    }
+
+    /**
+     * Set a measurer for filling the heights of rows that haven't been shown yet in the background,
+     * which requires a row height store.
+     */
+    public void setItemHeightMeasurer(@Nullable ItemHeightMeasurer itemHeightMeasurer) {
+        if (mBackgroundItemMeasurer != null) {
+            mBackgroundItemMeasurer.reset();
+        }
+        mBackgroundItemMeasurer = itemHeightMeasurer != null ? new BackgroundItemMeasurer(mView,
+                itemHeightMeasurer, new BackgroundItemMeasurer.Listener() {
+                    @Override
+                    public int getFirstPositionInRow(int row) {
+                        return getBackgroundPositionInRow(row, false);
+                    }
+                    @Override
+                    public int getEndPositionInRow(int row) {
+                        return getBackgroundPositionInRow(row, true);
+                    }
+                    @Override
+                    public int getSpanSize(int position) {
+                        return getBackgroundSpanSize(position);
+                    }
+                    @Override
+                    public void syncRows() {
+                        getRowHeightStore();
+                    }
+                    @Override
+                    public void onRowHeightsMeasured(int startRow, @NonNull int[] heights) {
+                        RecyclerViewHelper.this.onRowHeightsMeasured(startRow, heights);
+                    }
+                }) : null;
     }
 
     @Override
@@ -49,6 +240,8 @@ class RecyclerViewHelper implements FastScroller.ViewHelper {
             @Override
             public void onDraw(@NonNull Canvas canvas, @NonNull RecyclerView parent,
                                @NonNull RecyclerView.State state) {
+                measureItemHeights();
+                settleIfPending();
                 onPreDraw.run();
             }
         });
@@ -82,77 +275,818 @@ class RecyclerViewHelper implements FastScroller.ViewHelper {
 
     @Override
     public int getScrollRange() {
-        int itemCount = getItemCount();
-        if (itemCount == 0) {
-            return 0;
-        }
-        int itemHeight = getItemHeight();
-        if (itemHeight == 0) {
-            return 0;
-        }
-        return mView.getPaddingTop() + itemCount * itemHeight + mView.getPaddingBottom();
+        updateScrollModel();
+        return mLastScrollRange;
     }
 
     @Override
     public int getScrollOffset() {
-        int firstItemPosition = getFirstItemPosition();
-        if (firstItemPosition == RecyclerView.NO_POSITION) {
-            return 0;
+        updateScrollModel();
+        return mLastScrollOffset;
+    }
+
+    @Override
+    public void getScrollState(@NonNull ScrollState outState) {
+        updateScrollModel();
+        outState.scrollRange = mLastScrollRange;
+        outState.scrollOffset = mLastScrollOffset;
+        outState.viewportHeight = toScrollUnits(outState.viewportHeight);
+        outState.firstPosition = mLastFirstPosition;
+    }
+
+    /**
+     * Compute the scroll range and offset together, which share the layout manager, the first
+     * child and the item height.
+     */
+    private void updateScrollModel() {
+        if (isScrollModelFrozen()) {
+            return;
+        }
+        ScrollGeometryProvider scrollGeometryProvider = getScrollGeometryProvider();
+        if (scrollGeometryProvider != null) {
+            mLastScrollRange = scrollGeometryProvider.getScrollRange();
+            mLastScrollOffset = scrollGeometryProvider.getScrollOffset();
+            mScrollScale = 1;
+            mLastFirstPosition = ScrollState.NO_POSITION;
+            return;
+        }
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        if (linearLayoutManager != null && isAnchoredAtBottom(linearLayoutManager)) {
+            updateAnchoredScrollModel(linearLayoutManager);
+            return;
+        }
+        int firstPosition = RecyclerView.NO_POSITION;
+        int firstRow = RecyclerView.NO_POSITION;
+        int firstItemTop = 0;
+        if (linearLayoutManager != null && mView.getChildCount() > 0) {
+            View itemView = mView.getChildAt(0);
+            firstPosition = linearLayoutManager.getPosition(itemView);
+            firstRow = getRow(linearLayoutManager, firstPosition);
+            mView.getDecoratedBoundsWithMargins(itemView, mTempRect);
+            firstItemTop = mTempRect.top;
         }
+        mLastFirstPosition = firstPosition;
         int itemHeight = getItemHeight();
-        int firstItemTop = getFirstItemOffset();
-        return mView.getPaddingTop() + firstItemPosition * itemHeight - firstItemTop;
+        int paddingTop = mView.getPaddingTop();
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        if (rowHeightStore != null) {
+            long scrollRange;
+            if (rowHeightStore.getRowCount() == 0 || itemHeight == 0) {
+                scrollRange = 0;
+            } else {
+                scrollRange = paddingTop + rowHeightStore.getTotalHeight(itemHeight)
+                        + mView.getPaddingBottom();
+            }
+            updateScrollScale(scrollRange);
+            mLastScrollRange = toScrollUnits(scrollRange);
+            if (firstRow == RecyclerView.NO_POSITION) {
+                mLastScrollOffset = 0;
+            } else {
+                mLastScrollOffset = toScrollUnits(paddingTop + rowHeightStore.getOffset(firstRow,
+                        itemHeight) - firstItemTop);
+            }
+            return;
+        }
+        mScrollScale = 1;
+        int rowCount = linearLayoutManager != null ? getRowCount(linearLayoutManager) : 0;
+        mLastScrollRange = ItemGeometry.getScrollRange(paddingTop, rowCount, itemHeight,
+                mView.getPaddingBottom());
+        mLastScrollOffset = ItemGeometry.getScrollOffset(paddingTop, firstRow, itemHeight,
+                firstItemTop);
+    }
+
+    /**
+     * Compute the scroll model for a layout anchored at the bottom, from the bottom child and the
+     * heights of the rows below it, so that rows loaded above, e.g. older messages, don't move it.
+     */
+    private void updateAnchoredScrollModel(@NonNull LinearLayoutManager linearLayoutManager) {
+        int itemHeight = getItemHeight();
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        int rowCount = getRowCount(linearLayoutManager);
+        long totalHeight = getAnchoredRowOffset(rowHeightStore, rowCount, itemHeight);
+        int paddingTop = mView.getPaddingTop();
+        long scrollRange;
+        if (rowCount == 0 || itemHeight == 0) {
+            scrollRange = 0;
+        } else {
+            scrollRange = paddingTop + totalHeight + mView.getPaddingBottom();
+        }
+        updateScrollScale(scrollRange);
+        mLastScrollRange = toScrollUnits(scrollRange);
+        int childCount = mView.getChildCount();
+        if (childCount == 0) {
+            mLastScrollOffset = 0;
+            mLastFirstPosition = RecyclerView.NO_POSITION;
+            return;
+        }
+        mLastFirstPosition = linearLayoutManager.getPosition(mView.getChildAt(0));
+        View bottomItemView = mView.getChildAt(childCount - 1);
+        int bottomRow = getRowHeightStoreRow(linearLayoutManager, getRow(linearLayoutManager,
+                linearLayoutManager.getPosition(bottomItemView)), rowCount);
+        mView.getDecoratedBoundsWithMargins(bottomItemView, mTempRect);
+        mLastScrollOffset = toScrollUnits(paddingTop + totalHeight - getAnchoredRowOffset(
+                rowHeightStore, bottomRow, itemHeight) - mTempRect.bottom);
+    }
+
+    private void updateScrollScale(long scrollRange) {
+        mScrollScale = Math.max(1, (double) scrollRange / Integer.MAX_VALUE);
+    }
+
+    /**
+     * Convert pixels to the units of the scroll range and offset, which may be scaled down to fit
+     * in an int.
+     */
+    private int toScrollUnits(long pixels) {
+        return clampToInt(Math.round(pixels / mScrollScale));
+    }
+
+    private long toPixels(int scrollUnits) {
+        return Math.round(scrollUnits * mScrollScale);
+    }
+
+    private boolean isScrollModelFrozen() {
+        // The user is in control when dragging, and needs the real scroll offset.
+        if (mDragging) {
+            return false;
+        }
+        if (mScrollModelFrozen) {
+            return true;
+        }
+        // While items are being added or removed with animations, the first child may be a
+        // disappearing or translating view with transient bounds, so keep the last scroll model
+        // until the animations finish. Change and move animations don't affect the scroll model.
+        RecyclerView.ItemAnimator itemAnimator = mView.getItemAnimator();
+        if (!mItemAddOrRemovePending || itemAnimator == null) {
+            mItemAddOrRemovePending = false;
+            return false;
+        }
+        if (itemAnimator.isRunning()) {
+            mScrollModelFrozen = true;
+            itemAnimator.isRunning(mOnItemAnimationsFinishedListener);
+            return true;
+        }
+        // The animations only start after the next layout.
+        if (mView.hasPendingAdapterUpdates()) {
+            return true;
+        }
+        mItemAddOrRemovePending = false;
+        return false;
+    }
+
+    private void onItemAnimationsFinished() {
+        mScrollModelFrozen = false;
+        mItemAddOrRemovePending = false;
+        // Reconcile with the final layout once.
+        mView.invalidate();
     }
 
     @Override
     public void scrollTo(int offset) {
         // Stop any scroll in progress for RecyclerView.
         mView.stopScroll();
-        offset -= mView.getPaddingTop();
+        mPendingSettleDistance = 0;
+        if (mDragging) {
+            growRecycledViewPool();
+        }
+        ScrollGeometryProvider scrollGeometryProvider = getScrollGeometryProvider();
+        if (scrollGeometryProvider != null) {
+            scrollGeometryProvider.findItemAtScrollOffset(offset, mTempItemOffset);
+            scrollGeometryProvider.scrollToItemOffset(mTempItemOffset.position,
+                    mTempItemOffset.offset);
+            return;
+        }
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        if (linearLayoutManager != null && isAnchoredAtBottom(linearLayoutManager)) {
+            scrollToAnchored(linearLayoutManager, toPixels(offset));
+            return;
+        }
+        findRowAtScrollOffset(toPixels(offset), getItemHeight(), mTempItemOffset);
+        if (mDragging) {
+            mDragTargetRow = mTempItemOffset.position;
+        }
+        scrollToPositionWithOffset(mTempItemOffset.position, mTempItemOffset.offset);
+    }
+
+    private void scrollToAnchored(@NonNull LinearLayoutManager linearLayoutManager,
+                                  long offset) {
         int itemHeight = getItemHeight();
-        // firstItemPosition should be non-negative even if paddingTop is greater than item height.
-        int firstItemPosition = Math.max(0, offset / itemHeight);
-        int firstItemTop = firstItemPosition * itemHeight - offset;
-        scrollToPositionWithOffset(firstItemPosition, firstItemTop);
+        int rowCount = getRowCount(linearLayoutManager);
+        if (rowCount == 0 || itemHeight == 0) {
+            return;
+        }
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        // Find the row at the bottom of the viewport, from the bottom of the content.
+        int viewportBottom = mView.getHeight() - mView.getPaddingBottom();
+        long totalHeight = getAnchoredRowOffset(rowHeightStore, rowCount, itemHeight);
+        long bottomOffset = totalHeight + mView.getPaddingTop() - offset - viewportBottom;
+        findAnchoredRow(rowHeightStore, bottomOffset, rowCount, itemHeight, mTempItemOffset);
+        int anchoredRow = mTempItemOffset.position;
+        int rowBottomFromViewportBottom = mTempItemOffset.offset;
+        if (mDragging) {
+            mDragTargetRow = anchoredRow;
+        }
+        int row = getRowHeightStoreRow(linearLayoutManager, anchoredRow, rowCount);
+        int position = getFirstPositionInRow(linearLayoutManager, row);
+        if (linearLayoutManager.getReverseLayout()) {
+            // LinearLayoutManager takes the offset of the item's bottom from the bottom after
+            // padding in reverse layout.
+            linearLayoutManager.scrollToPositionWithOffset(position, rowBottomFromViewportBottom);
+        } else {
+            long rowHeight = getAnchoredRowOffset(rowHeightStore, anchoredRow + 1, itemHeight)
+                    - getAnchoredRowOffset(rowHeightStore, anchoredRow, itemHeight);
+            int rowTop = clampToInt(viewportBottom - rowBottomFromViewportBottom - rowHeight);
+            linearLayoutManager.scrollToPositionWithOffset(position,
+                    rowTop - mView.getPaddingTop());
+        }
+    }
+
+    @Override
+    public void smoothScrollTo(int offset) {
+        long distance = toPixels(offset) - toPixels(getScrollOffset());
+        int viewportHeight = mView.getHeight();
+        if (distance == 0 || viewportHeight == 0) {
+            scrollTo(offset);
+            return;
+        }
+        int maxSmoothScrollDistance = SMOOTH_SCROLL_MAX_VIEWPORTS * viewportHeight;
+        if (Math.abs(distance) <= maxSmoothScrollDistance) {
+            // A short smooth scroll reuses most of the items already laid out, which is cheaper
+            // than laying out everything again for a jump.
+            mView.stopScroll();
+            mPendingSettleDistance = 0;
+            smoothScrollBy((int) distance, maxSmoothScrollDistance);
+            return;
+        }
+        int settleDistance = (int) (Math.signum(distance) * SETTLE_VIEWPORTS * viewportHeight);
+        scrollTo(offset - toScrollUnits(settleDistance));
+        // The jump only takes effect in the next layout, so start settling after it.
+        mPendingSettleDistance = settleDistance;
+    }
+
+    private void settleIfPending() {
+        if (mPendingSettleDistance == 0) {
+            return;
+        }
+        int settleDistance = mPendingSettleDistance;
+        mPendingSettleDistance = 0;
+        smoothScrollBy(settleDistance, SMOOTH_SCROLL_MAX_VIEWPORTS * mView.getHeight());
+    }
+
+    private void smoothScrollBy(int distance, int maxDistance) {
+        int duration = Math.max(SMOOTH_SCROLL_MIN_DURATION_MILLIS, (int) (
+                (long) SMOOTH_SCROLL_MAX_DURATION_MILLIS * Math.abs(distance) / maxDistance));
+        mView.smoothScrollBy(0, distance, SMOOTH_SCROLL_INTERPOLATOR, duration);
+    }
+
+    @Override
+    public boolean saveScrollModel(@NonNull DataOutputStream output) throws IOException {
+        mItemHeightEstimator.writeHeightsTo(output);
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        output.writeBoolean(rowHeightStore != null);
+        if (rowHeightStore != null) {
+            rowHeightStore.writeTo(output);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean restoreScrollModel(@NonNull DataInputStream input) throws IOException {
+        mItemHeightEstimator.readHeightsFrom(input);
+        mViewTypesChanged = true;
+        boolean hasRowHeights = input.readBoolean();
+        if (hasRowHeights && mRowHeightStore != null) {
+            mRowHeightStoreFirstMovedPosition = 0;
+            mRowHeightStoreUnmovedEndCount = 0;
+            mRowHeightStore.readFrom(input);
+            mRowHeightStoreFirstMovedPosition = NO_MOVED_POSITION;
+            mRowHeightStoreUnmovedEndCount = NO_MOVED_POSITION;
+            // The rows were saved with the same layout.
+            LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+            mRowHeightStoreReversed = linearLayoutManager != null
+                    && isRowHeightStoreReversed(linearLayoutManager);
+            if (mBackgroundItemMeasurer != null) {
+                mBackgroundItemMeasurer.reset();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onDraggingChanged(boolean dragging) {
+        mDragging = dragging;
+        if (mDragging) {
+            growRecycledViewPool();
+        } else {
+            restoreRecycledViewPool();
+            mDragTargetRow = RecyclerView.NO_POSITION;
+        }
+    }
+
+    private void growRecycledViewPool() {
+        // A far jump detaches all the visible items into the RecycledViewPool, which only keeps a
+        // few views per type by default, so the rest would be destroyed and then created again for
+        // the next frame.
+        mTempViewTypeCounts.clear();
+        for (int i = 0, childCount = mView.getChildCount(); i < childCount; ++i) {
+            RecyclerView.ViewHolder viewHolder = mView.getChildViewHolder(mView.getChildAt(i));
+            int viewType = viewHolder.getItemViewType();
+            mTempViewTypeCounts.put(viewType, mTempViewTypeCounts.get(viewType) + 1);
+        }
+        RecyclerView.RecycledViewPool recycledViewPool = mView.getRecycledViewPool();
+        if (mGrownRecycledViewPool != recycledViewPool) {
+            restoreRecycledViewPool();
+            mGrownRecycledViewPool = recycledViewPool;
+        }
+        for (int i = 0, size = mTempViewTypeCounts.size(); i < size; ++i) {
+            int viewType = mTempViewTypeCounts.keyAt(i);
+            int count = mTempViewTypeCounts.valueAt(i);
+            // Only raise the max, and only as far as needed, since the pool may be shared or
+            // configured by the app.
+            if (count <= mGrownMaxRecycledViews.get(viewType, DEFAULT_MAX_RECYCLED_VIEWS)) {
+                continue;
+            }
+            recycledViewPool.setMaxRecycledViews(viewType, count);
+            mGrownMaxRecycledViews.put(viewType, count);
+        }
+    }
+
+    private void restoreRecycledViewPool() {
+        RecyclerView.RecycledViewPool recycledViewPool = mGrownRecycledViewPool;
+        if (recycledViewPool == null) {
+            return;
+        }
+        // Only restore the view types whose max we have raised.
+        for (int i = 0, size = mGrownMaxRecycledViews.size(); i < size; ++i) {
+            recycledViewPool.setMaxRecycledViews(mGrownMaxRecycledViews.keyAt(i),
+                    DEFAULT_MAX_RECYCLED_VIEWS);
+        }
+        mGrownRecycledViewPool = null;
+        mGrownMaxRecycledViews.clear();
     }
 
     @Nullable
     @Override
     public CharSequence getPopupText() {
-        PopupTextProvider popupTextProvider = mPopupTextProvider;
+        return getPopupText(getFirstItemAdapterPosition());
+    }
+
+    @Nullable
+    @Override
+    public CharSequence getPopupTextForScrollOffset(int scrollOffset) {
+        if (!hasPopupTextProvider()) {
+            return null;
+        }
+        return getPopupText(getAdapterPositionAtScrollOffset(scrollOffset));
+    }
+
+    @Nullable
+    @Override
+    public CharSequence getPopupTextForPosition(int position) {
+        return getPopupText(isInAdapter(position) ? position : getFirstItemAdapterPosition());
+    }
+
+    @Nullable
+    private CharSequence getPopupText(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return null;
+        }
+        PopupTextProvider popupTextProvider = findProvider(mPopupTextProvider, position,
+                PopupTextProvider.class, mTempPosition);
         if (popupTextProvider == null) {
+            return null;
+        }
+        return popupTextProvider.getPopupText(mView, mTempPosition[0]);
+    }
+
+    private boolean hasPopupTextProvider() {
+        return mPopupTextProvider != null || mView.getAdapter() instanceof PopupTextProvider
+                || mConcatAdapterSegments.getAdapter() != null;
+    }
+
+    @Nullable
+    @Override
+    public Object getPopupPreviewKey() {
+        return getPopupPreviewKey(getFirstItemAdapterPosition());
+    }
+
+    @Nullable
+    @Override
+    public Object getPopupPreviewKeyForScrollOffset(int scrollOffset) {
+        if (!hasPopupPreviewProvider()) {
+            return null;
+        }
+        return getPopupPreviewKey(getAdapterPositionAtScrollOffset(scrollOffset));
+    }
+
+    @Nullable
+    @Override
+    public Object getPopupPreviewKeyForPosition(int position) {
+        return getPopupPreviewKey(isInAdapter(position) ? position
+                : getFirstItemAdapterPosition());
+    }
+
+    @Nullable
+    private Object getPopupPreviewKey(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return null;
+        }
+        PopupPreviewProvider popupPreviewProvider = findProvider(mPopupPreviewProvider, position,
+                PopupPreviewProvider.class, mTempPosition);
+        if (popupPreviewProvider == null) {
+            return null;
+        }
+        Object key = popupPreviewProvider.getPopupPreviewKey(mView, mTempPosition[0]);
+        if (key == null || popupPreviewProvider == mPopupPreviewProvider
+                || popupPreviewProvider == mView.getAdapter()) {
+            return key;
+        }
+        // Remember which segment of a ConcatAdapter can load the preview. The key is queried every
+        // frame while scrolling, so reuse the last one if it still matches.
+        SegmentPopupPreviewKey segmentKey = mLastSegmentPopupPreviewKey;
+        if (segmentKey == null || segmentKey.getProvider() != popupPreviewProvider
+                || !segmentKey.mKey.equals(key)) {
+            segmentKey = new SegmentPopupPreviewKey(popupPreviewProvider, key);
+            mLastSegmentPopupPreviewKey = segmentKey;
+        }
+        return segmentKey;
+    }
+
+    private boolean hasPopupPreviewProvider() {
+        return mPopupPreviewProvider != null || mView.getAdapter() instanceof PopupPreviewProvider
+                || mConcatAdapterSegments.getAdapter() != null;
+    }
+
+    @Nullable
+    @Override
+    @WorkerThread
+    public Bitmap loadPopupPreview(@NonNull Object key, int width, int height) {
+        if (key instanceof SegmentPopupPreviewKey) {
+            SegmentPopupPreviewKey segmentKey = (SegmentPopupPreviewKey) key;
+            PopupPreviewProvider segmentProvider = segmentKey.getProvider();
+            return segmentProvider != null ? segmentProvider.loadPopupPreview(segmentKey.mKey,
+                    width, height) : null;
+        }
+        PopupPreviewProvider popupPreviewProvider = mPopupPreviewProvider;
+        if (popupPreviewProvider == null) {
             RecyclerView.Adapter<?> adapter = mView.getAdapter();
-            if (adapter instanceof PopupTextProvider) {
-                popupTextProvider = (PopupTextProvider) adapter;
+            if (adapter instanceof PopupPreviewProvider) {
+                popupPreviewProvider = (PopupPreviewProvider) adapter;
             }
         }
-        if (popupTextProvider == null) {
+        if (popupPreviewProvider == null) {
             return null;
         }
-        int position = getFirstItemAdapterPosition();
-        if (position == RecyclerView.NO_POSITION) {
+        return popupPreviewProvider.loadPopupPreview(key, width, height);
+    }
+
+    /**
+     * Find the provider for a position, which is the one set explicitly, the adapter, or the
+     * wrapped adapter of a {@link ConcatAdapter} segment.
+     *
+     * @param outPosition the position for the provider
+     */
+    @Nullable
+    private <T> T findProvider(@Nullable T provider, int position, @NonNull Class<T> providerClass,
+                               @NonNull int[] outPosition) {
+        outPosition[0] = position;
+        if (provider != null) {
+            return provider;
+        }
+        RecyclerView.Adapter<?> adapter = mView.getAdapter();
+        if (providerClass.isInstance(adapter)) {
+            return providerClass.cast(adapter);
+        }
+        ConcatAdapter concatAdapter = mConcatAdapterSegments.getAdapter();
+        if (concatAdapter == null || concatAdapter != adapter) {
             return null;
         }
-        return popupTextProvider.getPopupText(mView, position);
+        return ConcatAdapterSegments.findProvider(concatAdapter, position, providerClass,
+                outPosition);
     }
 
-    private int getItemCount() {
+    private int getAdapterPositionAtScrollOffset(int scrollOffset) {
+        ScrollGeometryProvider scrollGeometryProvider = getScrollGeometryProvider();
+        if (scrollGeometryProvider != null) {
+            RecyclerView.Adapter<?> adapter = mView.getAdapter();
+            int itemCount = adapter != null ? adapter.getItemCount() : 0;
+            if (itemCount == 0) {
+                return RecyclerView.NO_POSITION;
+            }
+            scrollGeometryProvider.findItemAtScrollOffset(scrollOffset, mTempItemOffset);
+            return Math.max(0, Math.min(mTempItemOffset.position, itemCount - 1));
+        }
         LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
         if (linearLayoutManager == null) {
-            return 0;
+            return RecyclerView.NO_POSITION;
         }
         int itemCount = linearLayoutManager.getItemCount();
-        if (itemCount == 0) {
+        int itemHeight = getItemHeight();
+        if (itemCount == 0 || itemHeight == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        int row;
+        if (isAnchoredAtBottom(linearLayoutManager)) {
+            RunLengthHeightStore rowHeightStore = getRowHeightStore();
+            int rowCount = getRowCount(linearLayoutManager);
+            long totalHeight = getAnchoredRowOffset(rowHeightStore, rowCount, itemHeight);
+            // The row just below the top of the viewport.
+            long topOffset = totalHeight + mView.getPaddingTop() - toPixels(scrollOffset) - 1;
+            findAnchoredRow(rowHeightStore, topOffset, rowCount, itemHeight, mTempItemOffset);
+            row = getRowHeightStoreRow(linearLayoutManager, mTempItemOffset.position, rowCount);
+        } else {
+            findRowAtScrollOffset(toPixels(scrollOffset), itemHeight, mTempItemOffset);
+            row = mTempItemOffset.position;
+        }
+        int position = getFirstPositionInRow(linearLayoutManager, row);
+        return Math.min(position, itemCount - 1);
+    }
+
+    /**
+     * @param scrollOffset the scroll offset in pixels
+     */
+    private void findRowAtScrollOffset(long scrollOffset, int itemHeight,
+                                       @NonNull ItemOffset outRowOffset) {
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        if (rowHeightStore != null) {
+            rowHeightStore.findRow(scrollOffset - mView.getPaddingTop(), itemHeight,
+                    outRowOffset);
+            return;
+        }
+        // The scroll scale is always 1 without a row height store.
+        ItemGeometry.findRowAtScrollOffset((int) scrollOffset, mView.getPaddingTop(), itemHeight,
+                outRowOffset);
+    }
+
+    /**
+     * @return the offset of the bottom of the row from the bottom of the content, for a layout
+     *         anchored at the bottom
+     */
+    private static long getAnchoredRowOffset(@Nullable RunLengthHeightStore rowHeightStore,
+                                             int anchoredRow, int itemHeight) {
+        if (rowHeightStore != null) {
+            return rowHeightStore.getOffset(anchoredRow, itemHeight);
+        }
+        return (long) anchoredRow * itemHeight;
+    }
+
+    /**
+     * Find the row at the offset from the bottom of the content, for a layout anchored at the
+     * bottom.
+     *
+     * @param outRowOffset receives the row, and the offset of its bottom from the offset
+     */
+    private static void findAnchoredRow(@Nullable RunLengthHeightStore rowHeightStore,
+                                        long offset, int rowCount, int itemHeight,
+                                        @NonNull ItemOffset outRowOffset) {
+        if (rowHeightStore != null) {
+            rowHeightStore.findRow(offset, itemHeight, outRowOffset);
+            return;
+        }
+        int row = (int) Math.max(0, Math.min(offset / itemHeight, rowCount - 1));
+        outRowOffset.set(row, clampToInt((long) row * itemHeight - offset));
+    }
+
+    @Nullable
+    private RunLengthHeightStore getRowHeightStore() {
+        if (mRowHeightStore == null) {
+            return null;
+        }
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        if (linearLayoutManager == null) {
+            return null;
+        }
+        int rowCount = getRowCount(linearLayoutManager);
+        // The data may not have been loaded yet, e.g. right after a restore.
+        if (rowCount == 0) {
+            return null;
+        }
+        boolean reversed = isRowHeightStoreReversed(linearLayoutManager);
+        if (mRowHeightStoreReversed != reversed) {
+            mRowHeightStoreReversed = reversed;
+            mRowHeightStoreFirstMovedPosition = 0;
+            mRowHeightStoreUnmovedEndCount = 0;
+        }
+        int keptRowCount;
+        if (reversed) {
+            // Rows are keyed from the end, and stacking from the end is only supported by
+            // LinearLayoutManager, where rows are items.
+            keptRowCount = mRowHeightStoreUnmovedEndCount;
+        } else if (mRowHeightStoreFirstMovedPosition != NO_MOVED_POSITION) {
+            // The row before the first moved position may have been filled up differently.
+            int firstMovedPosition = Math.min(mRowHeightStoreFirstMovedPosition,
+                    linearLayoutManager.getItemCount()) - 1;
+            keptRowCount = firstMovedPosition > 0 ? getRow(linearLayoutManager,
+                    firstMovedPosition) : 0;
+        } else {
+            keptRowCount = NO_MOVED_POSITION;
+        }
+        mRowHeightStoreFirstMovedPosition = NO_MOVED_POSITION;
+        mRowHeightStoreUnmovedEndCount = NO_MOVED_POSITION;
+        if (keptRowCount < mRowHeightStore.getRowCount()) {
+            if (keptRowCount == 0) {
+                mRowHeightStore.clear(rowCount);
+            } else {
+                mRowHeightStore.truncate(keptRowCount);
+            }
+            if (mBackgroundItemMeasurer != null) {
+                mBackgroundItemMeasurer.reset();
+            }
+        }
+        if (rowCount < mRowHeightStore.getRowCount()) {
+            mRowHeightStore.clear(rowCount);
+            if (mBackgroundItemMeasurer != null) {
+                mBackgroundItemMeasurer.reset();
+            }
+        } else {
+            mRowHeightStore.setRowCount(rowCount);
+        }
+        return mRowHeightStore;
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(value, Integer.MAX_VALUE));
+    }
+
+    private void measureItemHeights() {
+        updateObservedAdapter();
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        // Layout managers with their own scroll geometry don't need any estimation.
+        if (linearLayoutManager == null || getScrollGeometryProvider() != null
+                || isScrollModelFrozen()) {
+            return;
+        }
+        int childCount = mView.getChildCount();
+        if (childCount == 0) {
+            return;
+        }
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        int spanCount = getSpanCount(linearLayoutManager);
+        // Only measure items that have newly become visible, so that items staying on screen
+        // don't outweigh the others.
+        for (int i = 0; i < childCount; ++i) {
+            View itemView = mView.getChildAt(i);
+            int position = linearLayoutManager.getPosition(itemView);
+            if (position >= mMeasuredFirstPosition && position <= mMeasuredLastPosition) {
+                continue;
+            }
+            mView.getDecoratedBoundsWithMargins(itemView, mTempRect);
+            int height = mTempRect.height();
+            RecyclerView.ViewHolder viewHolder = mView.getChildViewHolder(itemView);
+            mItemHeightEstimator.addHeight(viewHolder.getItemViewType(), height);
+            mConcatAdapterSegments.addHeight(viewHolder, height);
+            if (rowHeightStore != null) {
+                int rowCount = rowHeightStore.getRowCount();
+                int row = getRowHeightStoreRow(linearLayoutManager, getRow(linearLayoutManager,
+                        position), rowCount);
+                if (row >= 0 && row < rowCount) {
+                    rowHeightStore.setHeight(row, height);
+                }
+            }
+        }
+        // Children are in the order of positions only without reverse layout.
+        int firstChildPosition = linearLayoutManager.getPosition(mView.getChildAt(0));
+        int lastChildPosition = linearLayoutManager.getPosition(mView.getChildAt(childCount - 1));
+        mMeasuredFirstPosition = Math.min(firstChildPosition, lastChildPosition);
+        mMeasuredLastPosition = Math.max(firstChildPosition, lastChildPosition);
+
+        if (mBackgroundItemMeasurer != null && rowHeightStore != null) {
+            int width = (mView.getWidth() - mView.getPaddingLeft() - mView.getPaddingRight())
+                    / spanCount;
+            if (width > 0) {
+                // Measure around where the user is heading first.
+                int focusRow = mDragTargetRow != RecyclerView.NO_POSITION ? mDragTargetRow
+                        : getRowHeightStoreRow(linearLayoutManager, getRow(linearLayoutManager,
+                                mMeasuredFirstPosition), rowHeightStore.getRowCount());
+                mBackgroundItemMeasurer.schedule(rowHeightStore.getRowCount(),
+                        linearLayoutManager.getItemCount(), spanCount, width, focusRow);
+            }
+        }
+    }
+
+    private void onRowHeightsMeasured(int startRow, @NonNull int[] heights) {
+        RunLengthHeightStore rowHeightStore = getRowHeightStore();
+        if (rowHeightStore == null) {
+            return;
+        }
+        int rowCount = rowHeightStore.getRowCount();
+        for (int i = 0; i < heights.length && startRow + i < rowCount; ++i) {
+            int height = heights[i];
+            int row = startRow + i;
+            // Heights measured from views take precedence.
+            if (height != RunLengthHeightStore.UNKNOWN_HEIGHT
+                    && rowHeightStore.getHeight(row) == RunLengthHeightStore.UNKNOWN_HEIGHT) {
+                rowHeightStore.setHeight(row, height);
+            }
+        }
+        // Update the scrollbar, which also schedules more measurements.
+        mView.invalidate();
+    }
+
+    /**
+     * @param row the row in the row height store
+     * @param end whether to return the position after the last one in the row instead of the first
+     *            one
+     */
+    private int getBackgroundPositionInRow(int row, boolean end) {
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        if (linearLayoutManager == null) {
             return 0;
         }
-        if (linearLayoutManager instanceof GridLayoutManager) {
-            GridLayoutManager gridLayoutManager = (GridLayoutManager) linearLayoutManager;
-            itemCount = (itemCount - 1) / gridLayoutManager.getSpanCount() + 1;
+        row = getRowHeightStoreRow(linearLayoutManager, row, getRowCount(linearLayoutManager));
+        if (end) {
+            ++row;
+        }
+        SpanRowIndex spanRowIndex = getSpanRowIndex(linearLayoutManager);
+        if (spanRowIndex != null) {
+            return spanRowIndex.getFirstPositionInRow(row);
+        }
+        return ItemGeometry.getFirstPositionInRow(row, getSpanCount(linearLayoutManager));
+    }
+
+    private int getBackgroundSpanSize(int position) {
+        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
+        if (!(linearLayoutManager instanceof GridLayoutManager)) {
+            return 1;
+        }
+        GridLayoutManager gridLayoutManager = (GridLayoutManager) linearLayoutManager;
+        int spanSize = gridLayoutManager.getSpanSizeLookup().getSpanSize(position);
+        return Math.max(1, Math.min(spanSize, gridLayoutManager.getSpanCount()));
+    }
+
+    private void updateObservedAdapter() {
+        RecyclerView.Adapter<?> adapter = mView.getAdapter();
+        if (mObservedAdapter == adapter) {
+            return;
+        }
+        if (mObservedAdapter != null) {
+            mObservedAdapter.unregisterAdapterDataObserver(mAdapterDataObserver);
+        }
+        boolean adapterReplaced = mObservedAdapter != null;
+        mObservedAdapter = adapter;
+        if (mObservedAdapter != null) {
+            mObservedAdapter.registerAdapterDataObserver(mAdapterDataObserver);
+        }
+        mConcatAdapterSegments.setAdapter(mObservedAdapter);
+        // Keep any restored scroll model for the first adapter.
+        if (adapterReplaced) {
+            mItemHeightEstimator.clearHeights();
+        }
+        onAdapterDataChanged(adapterReplaced ? 0 : NO_MOVED_POSITION,
+                adapterReplaced ? 0 : NO_MOVED_POSITION);
+    }
+
+    /**
+     * @param firstMovedPosition the first position whose row may have moved, or
+     *                           {@link #NO_MOVED_POSITION}
+     * @param unmovedEndCount the count of items at the end that haven't moved, or
+     *                        {@link #NO_MOVED_POSITION} if none has moved
+     */
+    private void onAdapterDataChanged(int firstMovedPosition, int unmovedEndCount) {
+        mViewTypesChanged = true;
+        mRowHeightStoreFirstMovedPosition = Math.min(mRowHeightStoreFirstMovedPosition,
+                firstMovedPosition);
+        mRowHeightStoreUnmovedEndCount = Math.min(mRowHeightStoreUnmovedEndCount,
+                Math.max(0, unmovedEndCount));
+        mSpanRowIndexFirstMovedPosition = Math.min(mSpanRowIndexFirstMovedPosition,
+                firstMovedPosition);
+        // Positions may have changed.
+        mMeasuredFirstPosition = RecyclerView.NO_POSITION;
+        mMeasuredLastPosition = RecyclerView.NO_POSITION;
+    }
+
+    private int getAdapterItemCount() {
+        RecyclerView.Adapter<?> adapter = mView.getAdapter();
+        return adapter != null ? adapter.getItemCount() : 0;
+    }
+
+    private void updateViewTypes() {
+        if (!mViewTypesChanged) {
+            return;
+        }
+        mViewTypesChanged = false;
+        mItemHeightEstimator.clearItems();
+        RecyclerView.Adapter<?> adapter = mView.getAdapter();
+        // Segments of a ConcatAdapter are sampled separately.
+        if (adapter == null || adapter == mConcatAdapterSegments.getAdapter()) {
+            return;
+        }
+        int itemCount = adapter.getItemCount();
+        int sampleCount = Math.min(itemCount, MAX_VIEW_TYPE_SAMPLE_COUNT);
+        for (int i = 0; i < sampleCount; ++i) {
+            int position = (int) ((long) i * itemCount / sampleCount);
+            mItemHeightEstimator.addItems(adapter.getItemViewType(position), 1);
         }
-        return itemCount;
     }
 
     private int getItemHeight() {
+        if (mItemHeightEstimator.hasHeights()) {
+            updateViewTypes();
+            double averageHeight = mItemHeightEstimator.getAverageHeight();
+            if (mConcatAdapterSegments.getAdapter() != null) {
+                averageHeight = mConcatAdapterSegments.getAverageHeight(averageHeight);
+            }
+            return (int) Math.round(averageHeight);
+        }
         if (mView.getChildCount() == 0) {
             return 0;
         }
@@ -161,23 +1095,23 @@ class RecyclerViewHelper implements FastScroller.ViewHelper {
         return mTempRect.height();
     }
 
-    private int getFirstItemPosition() {
-        int position = getFirstItemAdapterPosition();
-        LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
-        if (linearLayoutManager == null) {
-            return RecyclerView.NO_POSITION;
-        }
-        if (linearLayoutManager instanceof GridLayoutManager) {
-            GridLayoutManager gridLayoutManager = (GridLayoutManager) linearLayoutManager;
-            position /= gridLayoutManager.getSpanCount();
-        }
-        return position;
+    /**
+     * @return whether the position is still in the adapter, which may not be the case for a
+     *         position from a frozen scroll model
+     */
+    private boolean isInAdapter(int position) {
+        RecyclerView.Adapter<?> adapter = mView.getAdapter();
+        return adapter != null && position < adapter.getItemCount();
     }
 
     private int getFirstItemAdapterPosition() {
         if (mView.getChildCount() == 0) {
             return RecyclerView.NO_POSITION;
         }
+        if (getScrollGeometryProvider() != null) {
+            // Children of a custom layout manager aren't necessarily in the order of positions.
+            return getAdapterPositionAtScrollOffset(getScrollOffset());
+        }
         View itemView = mView.getChildAt(0);
         LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
         if (linearLayoutManager == null) {
@@ -186,29 +1120,139 @@ class RecyclerViewHelper implements FastScroller.ViewHelper {
         return linearLayoutManager.getPosition(itemView);
     }
 
-    private int getFirstItemOffset() {
-        if (mView.getChildCount() == 0) {
-            return RecyclerView.NO_POSITION;
-        }
-        View itemView = mView.getChildAt(0);
-        mView.getDecoratedBoundsWithMargins(itemView, mTempRect);
-        return mTempRect.top;
-    }
-
-    private void scrollToPositionWithOffset(int position, int offset) {
+    private void scrollToPositionWithOffset(int row, int offset) {
         LinearLayoutManager linearLayoutManager = getVerticalLinearLayoutManager();
         if (linearLayoutManager == null) {
             return;
         }
-        if (linearLayoutManager instanceof GridLayoutManager) {
-            GridLayoutManager gridLayoutManager = (GridLayoutManager) linearLayoutManager;
-            position *= gridLayoutManager.getSpanCount();
-        }
+        int position = getFirstPositionInRow(linearLayoutManager, row);
         // LinearLayoutManager actually takes offset from paddingTop instead of top of RecyclerView.
         offset -= mView.getPaddingTop();
         linearLayoutManager.scrollToPositionWithOffset(position, offset);
     }
 
+    private int getRowCount(@NonNull LinearLayoutManager linearLayoutManager) {
+        SpanRowIndex spanRowIndex = getSpanRowIndex(linearLayoutManager);
+        if (spanRowIndex != null) {
+            return spanRowIndex.getRowCount();
+        }
+        return ItemGeometry.getRowCount(linearLayoutManager.getItemCount(),
+                getSpanCount(linearLayoutManager));
+    }
+
+    private int getRow(@NonNull LinearLayoutManager linearLayoutManager, int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return RecyclerView.NO_POSITION;
+        }
+        SpanRowIndex spanRowIndex = getSpanRowIndex(linearLayoutManager);
+        if (spanRowIndex != null) {
+            return spanRowIndex.getRow(position);
+        }
+        return ItemGeometry.getRow(position, getSpanCount(linearLayoutManager));
+    }
+
+    private int getFirstPositionInRow(@NonNull LinearLayoutManager linearLayoutManager, int row) {
+        SpanRowIndex spanRowIndex = getSpanRowIndex(linearLayoutManager);
+        if (spanRowIndex != null) {
+            int rowCount = spanRowIndex.getRowCount();
+            if (rowCount == 0) {
+                return 0;
+            }
+            return spanRowIndex.getFirstPositionInRow(Math.max(0, Math.min(row, rowCount - 1)));
+        }
+        return ItemGeometry.getFirstPositionInRow(row, getSpanCount(linearLayoutManager));
+    }
+
+    /**
+     * @return the row index for a grid with a custom {@link GridLayoutManager.SpanSizeLookup}, or
+     *         {@code null} if rows can be computed from the span count alone
+     */
+    @Nullable
+    private SpanRowIndex getSpanRowIndex(@NonNull LinearLayoutManager linearLayoutManager) {
+        if (!(linearLayoutManager instanceof GridLayoutManager)) {
+            return null;
+        }
+        GridLayoutManager gridLayoutManager = (GridLayoutManager) linearLayoutManager;
+        GridLayoutManager.SpanSizeLookup spanSizeLookup = gridLayoutManager.getSpanSizeLookup();
+        if (spanSizeLookup instanceof GridLayoutManager.DefaultSpanSizeLookup) {
+            return null;
+        }
+        int itemCount = gridLayoutManager.getItemCount();
+        int spanCount = gridLayoutManager.getSpanCount();
+        if (spanSizeLookup != mIndexedSpanSizeLookup
+                || spanCount != mSpanRowIndex.getSpanCount()) {
+            mSpanRowIndexFirstMovedPosition = NO_MOVED_POSITION;
+            mIndexedSpanSizeLookup = spanSizeLookup;
+            mSpanRowIndex.rebuild(itemCount, spanCount, spanSizeLookup::getSpanSize);
+            return mSpanRowIndex;
+        }
+        if (mSpanRowIndexFirstMovedPosition != NO_MOVED_POSITION) {
+            // The row before the first moved position may have been filled up differently.
+            mSpanRowIndex.truncate(Math.max(0, mSpanRowIndexFirstMovedPosition - 1));
+            mSpanRowIndexFirstMovedPosition = NO_MOVED_POSITION;
+        }
+        if (itemCount < mSpanRowIndex.getItemCount()) {
+            mSpanRowIndex.truncate(itemCount);
+        }
+        if (itemCount > mSpanRowIndex.getItemCount()) {
+            mSpanRowIndex.append(itemCount, spanSizeLookup::getSpanSize);
+        }
+        return mSpanRowIndex;
+    }
+
+    private boolean hasSpanSizeLookup() {
+        RecyclerView.LayoutManager layoutManager = mView.getLayoutManager();
+        return layoutManager instanceof GridLayoutManager
+                && !(((GridLayoutManager) layoutManager).getSpanSizeLookup()
+                        instanceof GridLayoutManager.DefaultSpanSizeLookup);
+    }
+
+    /**
+     * @return whether the layout is anchored at the bottom, i.e. with reverse layout or stacking
+     *         from the end, where the scroll model is built from the bottom
+     */
+    private static boolean isAnchoredAtBottom(@NonNull LinearLayoutManager linearLayoutManager) {
+        return linearLayoutManager.getReverseLayout() || linearLayoutManager.getStackFromEnd();
+    }
+
+    /**
+     * @return whether the rows in the row height store are keyed from the last one, i.e. when
+     *         stacking from the end without reverse layout, where older items are usually inserted
+     *         at the start, e.g. for a chat history loaded in pages
+     */
+    private static boolean isRowHeightStoreReversed(
+            @NonNull LinearLayoutManager linearLayoutManager) {
+        return linearLayoutManager.getStackFromEnd() && !linearLayoutManager.getReverseLayout();
+    }
+
+    /**
+     * Map between a row and its key in the row height store, which is its own inverse. The key
+     * grows from the bottom for a layout anchored at the bottom.
+     */
+    private static int getRowHeightStoreRow(@NonNull LinearLayoutManager linearLayoutManager,
+                                            int row, int rowCount) {
+        if (row == RecyclerView.NO_POSITION) {
+            return RecyclerView.NO_POSITION;
+        }
+        return isRowHeightStoreReversed(linearLayoutManager) ? rowCount - 1 - row : row;
+    }
+
+    private static int getSpanCount(@NonNull LinearLayoutManager linearLayoutManager) {
+        if (linearLayoutManager instanceof GridLayoutManager) {
+            return ((GridLayoutManager) linearLayoutManager).getSpanCount();
+        }
+        return 1;
+    }
+
+    @Nullable
+    private ScrollGeometryProvider getScrollGeometryProvider() {
+        RecyclerView.LayoutManager layoutManager = mView.getLayoutManager();
+        if (!(layoutManager instanceof ScrollGeometryProvider)) {
+            return null;
+        }
+        return (ScrollGeometryProvider) layoutManager;
+    }
+
     @Nullable
     private LinearLayoutManager getVerticalLinearLayoutManager() {
         RecyclerView.LayoutManager layoutManager = mView.getLayoutManager();
@@ -221,4 +1265,48 @@ class RecyclerViewHelper implements FastScroller.ViewHelper {
         }
         return linearLayoutManager;
     }
+
+    /**
+     * The key is kept in the popup preview cache shared across all fast scrollers, so it only
+     * weakly references the provider to avoid leaking adapters.
+     */
+    private static class SegmentPopupPreviewKey {
+
+        @NonNull
+        private final WeakReference<PopupPreviewProvider> mProviderReference;
+        private final int mProviderHashCode;
+        @NonNull
+        public final Object mKey;
+
+        public SegmentPopupPreviewKey(@NonNull PopupPreviewProvider provider,
+                                      @NonNull Object key) {
+            mProviderReference = new WeakReference<>(provider);
+            mProviderHashCode = System.identityHashCode(provider);
+            mKey = key;
+        }
+
+        @Nullable
+        public PopupPreviewProvider getProvider() {
+            return mProviderReference.get();
+        }
+
+        @Override
+        public boolean equals(@Nullable Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof SegmentPopupPreviewKey)) {
+                return false;
+            }
+            SegmentPopupPreviewKey that = (SegmentPopupPreviewKey) object;
+            // A key whose provider has been garbage collected never matches again.
+            PopupPreviewProvider provider = getProvider();
+            return provider != null && provider == that.getProvider() && mKey.equals(that.mKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mProviderHashCode + mKey.hashCode();
+        }
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import me.zhanghai.android.fastscroll.core.Scheduler;
+
+/**
+ * Animates the alpha and translation X of a view in frames posted to a {@link Scheduler}, instead
+ * of the {@link android.view.ViewPropertyAnimator} which always runs on the wall clock.
+ */
+class ScheduledViewAnimator implements Runnable {
+
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    @NonNull
+    private final View mView;
+    @NonNull
+    private final Scheduler mScheduler;
+
+    private float mStartAlpha;
+    private float mEndAlpha;
+    private float mStartTranslationX;
+    private float mEndTranslationX;
+    private long mStartTimeMillis;
+    private long mDurationMillis;
+    @Nullable
+    private Interpolator mInterpolator;
+
+    public ScheduledViewAnimator(@NonNull View view, @NonNull Scheduler scheduler) {
+        mView = view;
+        mScheduler = scheduler;
+    }
+
+    public void animate(float alpha, float translationX, long durationMillis,
+                        @Nullable Interpolator interpolator) {
+        mScheduler.removeCallbacks(this);
+        mStartAlpha = mView.getAlpha();
+        mEndAlpha = alpha;
+        mStartTranslationX = mView.getTranslationX();
+        mEndTranslationX = translationX;
+        mStartTimeMillis = mScheduler.uptimeMillis();
+        mDurationMillis = durationMillis;
+        mInterpolator = interpolator;
+        run();
+    }
+
+    @Override
+    public void run() {
+        long elapsedMillis = mScheduler.uptimeMillis() - mStartTimeMillis;
+        float fraction = mDurationMillis > 0 ? Math.min(1f, (float) elapsedMillis / mDurationMillis)
+                : 1f;
+        float value = mInterpolator != null ? mInterpolator.getInterpolation(fraction) : fraction;
+        mView.setAlpha(mStartAlpha + (mEndAlpha - mStartAlpha) * value);
+        mView.setTranslationX(mStartTranslationX + (mEndTranslationX - mStartTranslationX)
+                * value);
+        if (fraction < 1f) {
+            mScheduler.postDelayed(this, FRAME_INTERVAL_MILLIS);
+        }
+    }
+}
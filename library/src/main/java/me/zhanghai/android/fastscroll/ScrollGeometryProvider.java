@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import me.zhanghai.android.fastscroll.core.ItemOffset;
+
+/**
+ * The exact scroll geometry of a {@link RecyclerView.LayoutManager}, for layout managers that
+ * already know their own layout, e.g. a timeline or a flexbox layout. When the layout manager of a
+ * {@link RecyclerView} implements this, it is used instead of estimating from measured items.
+ * <p>
+ * Offsets are in pixels and include the padding of the view, as for
+ * {@link android.view.View#computeVerticalScrollOffset()}. Methods are called for every frame and
+ * every drag event, and should take {@code O(1)} or {@code O(log n)} time.
+ */
+public interface ScrollGeometryProvider {
+
+    int getScrollRange();
+
+    int getScrollOffset();
+
+    /**
+     * Find the item that should be the first one when the content is scrolled to the offset.
+     *
+     * @param outItemOffset receives the position, and the offset of the item's top from the top of
+     *                      the view
+     */
+    void findItemAtScrollOffset(int scrollOffset, @NonNull ItemOffset outItemOffset);
+
+    /**
+     * Scroll so that the item's top is at the offset from the top of the view.
+     */
+    void scrollToItemOffset(int position, int offset);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.os.Bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Saves and restores the scroll model of a {@link FastScroller.ViewHelper}, inline in the saved
+ * instance state when it's small, or in a file keyed by the dataset ID otherwise.
+ * <p>
+ * The format is a header with the dataset ID and version, followed by the scroll model and a
+ * CRC32 checksum of everything before it. A model for a different dataset or version, or with a
+ * mismatching checksum, is ignored.
+ */
+class ScrollModelPersistence {
+
+    private static final int MAGIC = 0x4146534D; // "AFSM"
+    private static final int VERSION = 1;
+
+    private static final String KEY_PREFIX = ScrollModelPersistence.class.getName() + ".";
+
+    // Keep the saved instance state well within the binder transaction limit.
+    private static final int MAX_INLINE_BYTES = 64 * 1024;
+
+    private ScrollModelPersistence() {}
+
+    public static void save(@NonNull FastScroller.ViewHelper viewHelper, @NonNull Bundle outState,
+                            @NonNull File directory, @NonNull String datasetId, int datasetVersion)
+            throws IOException {
+        String key = KEY_PREFIX + datasetId;
+        byte[] bytes = write(viewHelper, datasetId, datasetVersion);
+        if (bytes == null) {
+            outState.remove(key);
+            return;
+        }
+        if (bytes.length <= MAX_INLINE_BYTES) {
+            outState.putByteArray(key, bytes);
+            return;
+        }
+        outState.remove(key);
+        File file = getFile(directory, datasetId);
+        // Write to a temporary file first so that a crash never leaves a partial file.
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(bytes);
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Failed to rename " + tempFile + " to " + file);
+        }
+    }
+
+    public static boolean restore(@NonNull FastScroller.ViewHelper viewHelper,
+                                  @Nullable Bundle savedInstanceState, @NonNull File directory,
+                                  @NonNull String datasetId, int datasetVersion)
+            throws IOException {
+        byte[] bytes = savedInstanceState != null ? savedInstanceState.getByteArray(KEY_PREFIX
+                + datasetId) : null;
+        if (bytes == null) {
+            File file = getFile(directory, datasetId);
+            if (!file.isFile()) {
+                return false;
+            }
+            bytes = readFile(file);
+        }
+        return read(viewHelper, bytes, datasetId, datasetVersion);
+    }
+
+    @Nullable
+    private static byte[] write(@NonNull FastScroller.ViewHelper viewHelper,
+                                @NonNull String datasetId, int datasetVersion)
+            throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeUTF(datasetId);
+        output.writeInt(datasetVersion);
+        if (!viewHelper.saveScrollModel(output)) {
+            return null;
+        }
+        output.flush();
+        CRC32 crc32 = new CRC32();
+        crc32.update(byteArrayOutputStream.toByteArray());
+        output.writeInt((int) crc32.getValue());
+        output.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static boolean read(@NonNull FastScroller.ViewHelper viewHelper,
+                                @NonNull byte[] bytes, @NonNull String datasetId,
+                                int datasetVersion) throws IOException {
+        int length = bytes.length - Integer.BYTES;
+        if (length < 0) {
+            return false;
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, length);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+        int checksum = new DataInputStream(new ByteArrayInputStream(bytes, length,
+                Integer.BYTES)).readInt();
+        if (checksum != (int) crc32.getValue()) {
+            return false;
+        }
+        if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION
+                || !input.readUTF().equals(datasetId) || input.readInt() != datasetVersion) {
+            return false;
+        }
+        return viewHelper.restoreScrollModel(input);
+    }
+
+    @NonNull
+    private static File getFile(@NonNull File directory, @NonNull String datasetId) {
+        // The dataset ID is also checked in the header, so collisions are harmless.
+        return new File(directory, "afs_scroll_model_" + Integer.toHexString(datasetId.hashCode())
+                + ".bin");
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+/**
+ * A mutable snapshot of the scroll state of a view, filled by
+ * {@link FastScroller.ViewHelper#getScrollState(ScrollState)} in one pass so that it can be reused
+ * for the rest of a frame without allocation.
+ */
+public class ScrollState {
+
+    public static final int NO_POSITION = -1;
+
+    public int scrollRange;
+
+    public int scrollOffset;
+
+    public int viewportHeight;
+
+    /**
+     * The position of the first item, or {@link #NO_POSITION} if the view doesn't have items.
+     */
+    public int firstPosition = NO_POSITION;
+
+    public void set(int scrollRange, int scrollOffset, int viewportHeight, int firstPosition) {
+        this.scrollRange = scrollRange;
+        this.scrollOffset = scrollOffset;
+        this.viewportHeight = viewportHeight;
+        this.firstPosition = firstPosition;
+    }
+}
@@ -66,10 +66,12 @@ public abstract class SimpleViewHelper implements FastScroller.ViewHelper {
             }
 
             if (actionMasked != MotionEvent.ACTION_CANCEL) {
-                MotionEvent cancelEvent = MotionEvent.obtain(event);
-                cancelEvent.setAction(MotionEvent.ACTION_CANCEL);
-                superOnInterceptTouchEvent(cancelEvent);
-                cancelEvent.recycle();
+                // Reuse the event instead of obtaining a copy, to avoid allocation for every
+                // intercepted event.
+                int action = event.getAction();
+                event.setAction(MotionEvent.ACTION_CANCEL);
+                superOnInterceptTouchEvent(event);
+                event.setAction(action);
             } else {
                 superOnInterceptTouchEvent(event);
             }
@@ -104,10 +106,10 @@ public abstract class SimpleViewHelper implements FastScroller.ViewHelper {
                     }
 
                     if (actionMasked != MotionEvent.ACTION_CANCEL) {
-                        MotionEvent cancelEvent = MotionEvent.obtain(event);
-                        cancelEvent.setAction(MotionEvent.ACTION_CANCEL);
-                        superOnTouchEvent(cancelEvent);
-                        cancelEvent.recycle();
+                        int action = event.getAction();
+                        event.setAction(MotionEvent.ACTION_CANCEL);
+                        superOnTouchEvent(event);
+                        event.setAction(action);
                     } else {
                         superOnTouchEvent(event);
                     }
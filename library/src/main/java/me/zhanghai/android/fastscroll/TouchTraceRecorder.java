@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.view.MotionEvent;
+
+import androidx.annotation.NonNull;
+import me.zhanghai.android.fastscroll.core.TouchTrace;
+
+/**
+ * Records the touch events of the first pointer into a {@link TouchTrace}, including the
+ * historical samples batched into each event.
+ *
+ * @see TouchTraceReplayer
+ */
+public class TouchTraceRecorder {
+
+    @NonNull
+    private TouchTrace mTrace = new TouchTrace();
+
+    public void record(@NonNull MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action != MotionEvent.ACTION_DOWN && action != MotionEvent.ACTION_MOVE
+                && action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
+            return;
+        }
+        mTrace.startEvent(action);
+        for (int i = 0, count = event.getHistorySize(); i < count; ++i) {
+            mTrace.addSample(event.getHistoricalEventTime(i), event.getHistoricalX(i),
+                    event.getHistoricalY(i));
+        }
+        mTrace.addSample(event.getEventTime(), event.getX(), event.getY());
+    }
+
+    @NonNull
+    public TouchTrace getTrace() {
+        return mTrace;
+    }
+
+    public void reset() {
+        mTrace = new TouchTrace();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.os.SystemClock;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import me.zhanghai.android.fastscroll.core.Scheduler;
+
+class ViewScheduler implements Scheduler {
+
+    @NonNull
+    private final View mView;
+
+    public ViewScheduler(@NonNull View view) {
+        mView = view;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+        mView.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(@NonNull Runnable runnable) {
+        mView.removeCallbacks(runnable);
+    }
+}
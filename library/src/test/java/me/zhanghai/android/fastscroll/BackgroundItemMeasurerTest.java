@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+
+import androidx.annotation.NonNull;
+import me.zhanghai.android.fastscroll.core.RunLengthHeightStore;
+
+@RunWith(RobolectricTestRunner.class)
+public class BackgroundItemMeasurerTest {
+
+    private static final int ROW_COUNT = 10;
+
+    private static final int MAX_WAIT_COUNT = 500;
+
+    private static final long WAIT_MILLIS = 10;
+
+    private BackgroundItemMeasurer mMeasurer;
+
+    private boolean mMeasurerFailing;
+    private boolean mTruncatePending;
+    private int mSyncCount;
+    private int mDeliveredCount;
+    private int[] mDeliveredHeights;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        View view = new View(activity);
+        // Results are posted to the view, which needs to be attached for them to run.
+        activity.setContentView(view);
+        mMeasurer = new BackgroundItemMeasurer(view, (position, width) -> {
+                    if (mMeasurerFailing) {
+                        throw new IllegalStateException();
+                    }
+                    return 10;
+                },
+                new BackgroundItemMeasurer.Listener() {
+                    @Override
+                    public int getFirstPositionInRow(int row) {
+                        return row;
+                    }
+                    @Override
+                    public int getEndPositionInRow(int row) {
+                        return row + 1;
+                    }
+                    @Override
+                    public int getSpanSize(int position) {
+                        return 1;
+                    }
+                    @Override
+                    public void syncRows() {
+                        ++mSyncCount;
+                        // Like the row height store being truncated for an adapter change.
+                        if (mTruncatePending) {
+                            mTruncatePending = false;
+                            mMeasurer.reset();
+                        }
+                    }
+                    @Override
+                    public void onRowHeightsMeasured(int startRow, @NonNull int[] heights) {
+                        ++mDeliveredCount;
+                        mDeliveredHeights = heights;
+                    }
+                });
+    }
+
+    @Test
+    public void deliversMeasuredRows() {
+        mMeasurer.schedule(ROW_COUNT, ROW_COUNT, 1, 100, 0);
+        awaitChunk();
+        Assert.assertEquals(1, mDeliveredCount);
+    }
+
+    @Test
+    public void dropsChunkWhenRowsAreTruncatedBeforeDelivery() {
+        mMeasurer.schedule(ROW_COUNT, ROW_COUNT, 1, 100, 0);
+        // The truncate is only applied when the rows are synced upon delivery.
+        mTruncatePending = true;
+        awaitChunk();
+        Assert.assertEquals(0, mDeliveredCount);
+    }
+
+    @Test
+    public void deliversUnknownHeightsWhenMeasurerThrows() {
+        mMeasurerFailing = true;
+        mMeasurer.schedule(ROW_COUNT, ROW_COUNT, 1, 100, 0);
+        awaitChunk();
+        Assert.assertEquals(1, mDeliveredCount);
+        for (int height : mDeliveredHeights) {
+            Assert.assertEquals(RunLengthHeightStore.UNKNOWN_HEIGHT, height);
+        }
+    }
+
+    private void awaitChunk() {
+        // The main looper clock is paused, so wait in real time for the background thread.
+        for (int i = 0; mSyncCount == 0; ++i) {
+            Assert.assertTrue("Timed out waiting for measurement", i < MAX_WAIT_COUNT);
+            Shadows.shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Checks the work done for a drag of the scrollbar against the budgets checked in to
+ * {@code drag-budgets.properties}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DragBudgetTest {
+
+    private static final int ITEM_COUNT = 10000;
+
+    private static final int ITEM_HEIGHT = 50;
+
+    private static final int MOVE_COUNT = 50;
+
+    private RecyclerView mRecyclerView;
+
+    private boolean mDragEnded;
+
+    private int mTouchEventCount;
+    private int mScrollToCount;
+    private int mLayoutCount;
+    private int mPopupMeasureCount;
+    private int mBindCount;
+
+    @Before
+    public void setUp() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class);
+        Activity activity = controller.get();
+        activity.setTheme(R.style.Theme_AppCompat_Light);
+        controller.setup();
+        mRecyclerView = new RecyclerView(activity);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(activity));
+        mRecyclerView.setAdapter(new Adapter(this));
+        activity.setContentView(mRecyclerView);
+        new FastScrollerBuilder(mRecyclerView)
+                .setOnDragStatsListener(this::onDragStats)
+                .build();
+        DragSimulator.drawFrame(mRecyclerView);
+        mBindCount = 0;
+    }
+
+    private void onDragStats(@NonNull DragStats stats) {
+        // The stats are only valid during the callback.
+        mTouchEventCount = stats.getTouchEventCount();
+        mScrollToCount = stats.getScrollToCount();
+        mLayoutCount = stats.getLayoutCount();
+        mPopupMeasureCount = stats.getPopupMeasureCount();
+        mDragEnded = true;
+    }
+
+    @Test
+    public void dragStaysWithinBudgets() throws IOException {
+        DragSimulator.drag(mRecyclerView, MOVE_COUNT, () -> {});
+        Assert.assertTrue("Drag didn't start", mDragEnded);
+        Assert.assertTrue("No touch events counted", mTouchEventCount > 0);
+        Properties budgets = loadBudgets();
+        assertWithinBudget(budgets, "scrollToCount", mScrollToCount);
+        assertWithinBudget(budgets, "layoutCount", mLayoutCount);
+        assertWithinBudget(budgets, "popupMeasureCount", mPopupMeasureCount);
+        assertWithinBudget(budgets, "bindCount", mBindCount);
+    }
+
+    @NonNull
+    private static Properties loadBudgets() throws IOException {
+        Properties budgets = new Properties();
+        try (InputStream inputStream = DragBudgetTest.class.getResourceAsStream(
+                "drag-budgets.properties")) {
+            Assert.assertNotNull("Missing drag-budgets.properties", inputStream);
+            budgets.load(inputStream);
+        }
+        return budgets;
+    }
+
+    private static void assertWithinBudget(@NonNull Properties budgets, @NonNull String name,
+                                           int count) {
+        String budget = budgets.getProperty(name);
+        Assert.assertNotNull("Missing budget for " + name, budget);
+        Assert.assertTrue(name + " " + count + " exceeds budget " + budget,
+                count <= Integer.parseInt(budget));
+    }
+
+    private static class Adapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+            implements PopupTextProvider {
+
+        @NonNull
+        private final DragBudgetTest mTest;
+
+        Adapter(@NonNull DragBudgetTest test) {
+            mTest = test;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                          int viewType) {
+            TextView textView = new TextView(parent.getContext());
+            textView.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ITEM_HEIGHT));
+            return new RecyclerView.ViewHolder(textView) {};
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            ((TextView) holder.itemView).setText(String.valueOf(position));
+            ++mTest.mBindCount;
+        }
+
+        @Override
+        public int getItemCount() {
+            return ITEM_COUNT;
+        }
+
+        @NonNull
+        @Override
+        public CharSequence getPopupText(@NonNull View view, int position) {
+            return String.valueOf(position / 100);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.time.Duration;
+
+import org.robolectric.Shadows;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Drags the scrollbar of a view from the top of its track to the bottom, rendering a frame after
+ * each touch event.
+ */
+class DragSimulator {
+
+    private static final Duration FRAME_DURATION = Duration.ofMillis(16);
+
+    private DragSimulator() {}
+
+    public static void drawFrame(@NonNull View view) {
+        Shadows.shadowOf(Looper.getMainLooper()).idleFor(FRAME_DURATION);
+        // Make sure the pre-draw listeners run, which update the scrollbar.
+        Bitmap bitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        view.draw(new Canvas(bitmap));
+    }
+
+    /**
+     * @param onMove called right before each {@link MotionEvent#ACTION_MOVE} is dispatched
+     */
+    public static void drag(@NonNull View view, int moveCount, @NonNull Runnable onMove) {
+        // The track is at the end edge of the view.
+        float x = view.getWidth() - 1;
+        float startY = 1;
+        float endY = view.getHeight() - 1;
+        long downTime = SystemClock.uptimeMillis();
+        dispatch(view, downTime, MotionEvent.ACTION_DOWN, x, startY);
+        drawFrame(view);
+        for (int i = 1; i <= moveCount; ++i) {
+            float y = startY + (endY - startY) * i / moveCount;
+            onMove.run();
+            dispatch(view, downTime, MotionEvent.ACTION_MOVE, x, y);
+            drawFrame(view);
+        }
+        dispatch(view, downTime, MotionEvent.ACTION_UP, x, endY);
+        drawFrame(view);
+    }
+
+    private static void dispatch(@NonNull View view, long downTime, int action, float x,
+                                 float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y,
+                0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
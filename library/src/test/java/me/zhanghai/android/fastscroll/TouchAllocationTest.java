@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.zhanghai.android.fastscroll;
+
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Checks that dispatching a {@link MotionEvent#ACTION_MOVE} doesn't allocate, since there can be
+ * hundreds of them per second during a drag.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TouchAllocationTest {
+
+    private static final int WARM_UP_MOVE_COUNT = 1000;
+
+    private static final int MOVE_COUNT = 10000;
+
+    private MotionEvent mEvent;
+
+    @Before
+    public void setUp() {
+        long time = SystemClock.uptimeMillis();
+        // A single event is reused for all the moves, so that only the dispatch is measured.
+        mEvent = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, 10, 10, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mEvent.recycle();
+    }
+
+    @Test
+    public void onItemTouchDispatcherInterceptDoesNotAllocate() {
+        RecyclerView recyclerView = new RecyclerView(RuntimeEnvironment.getApplication());
+        FixOnItemTouchListenerRecyclerView.OnItemTouchDispatcher dispatcher =
+                new FixOnItemTouchListenerRecyclerView.OnItemTouchDispatcher();
+        // Neither listener intercepts, so both keep being offered every move.
+        dispatcher.addListener(new RegionListener(false));
+        dispatcher.addListener(new RecyclerView.SimpleOnItemTouchListener());
+        dispatcher.onInterceptTouchEvent(recyclerView, mEvent);
+        mEvent.setAction(MotionEvent.ACTION_MOVE);
+        assertMovesDoNotAllocate(() -> dispatcher.onInterceptTouchEvent(recyclerView, mEvent));
+    }
+
+    @Test
+    public void onItemTouchDispatcherTouchDoesNotAllocate() {
+        RecyclerView recyclerView = new RecyclerView(RuntimeEnvironment.getApplication());
+        FixOnItemTouchListenerRecyclerView.OnItemTouchDispatcher dispatcher =
+                new FixOnItemTouchListenerRecyclerView.OnItemTouchDispatcher();
+        dispatcher.addListener(new RecyclerView.SimpleOnItemTouchListener());
+        dispatcher.addListener(new RegionListener(true));
+        dispatcher.onInterceptTouchEvent(recyclerView, mEvent);
+        mEvent.setAction(MotionEvent.ACTION_MOVE);
+        Assert.assertTrue(dispatcher.onInterceptTouchEvent(recyclerView, mEvent));
+        assertMovesDoNotAllocate(() -> dispatcher.onTouchEvent(recyclerView, mEvent));
+    }
+
+    @Test
+    public void simpleViewHelperInterceptDoesNotAllocate() {
+        TestViewHelper viewHelper = new TestViewHelper();
+        viewHelper.addOnTouchEventListener(event -> true);
+        mEvent.setAction(MotionEvent.ACTION_MOVE);
+        // The listener intercepts every time, so the view gets a synthetic cancel every time.
+        assertMovesDoNotAllocate(() -> viewHelper.onInterceptTouchEvent(mEvent));
+    }
+
+    @Test
+    public void simpleViewHelperTouchDoesNotAllocate() {
+        TestViewHelper viewHelper = new TestViewHelper();
+        viewHelper.addOnTouchEventListener(event -> event.getActionMasked()
+                != MotionEvent.ACTION_DOWN);
+        viewHelper.onTouchEvent(mEvent);
+        mEvent.setAction(MotionEvent.ACTION_MOVE);
+        assertMovesDoNotAllocate(() -> viewHelper.onTouchEvent(mEvent));
+    }
+
+    private static void assertMovesDoNotAllocate(@NonNull Runnable move) {
+        for (int i = 0; i < WARM_UP_MOVE_COUNT; ++i) {
+            move.run();
+        }
+        // Reading the counter may allocate by itself, which is measured with an empty loop.
+        long baselineStartBytes = getAllocatedBytes();
+        for (int i = 0; i < MOVE_COUNT; ++i) {
+            // Nothing to do.
+        }
+        long baselineBytes = getAllocatedBytes() - baselineStartBytes;
+        long startBytes = getAllocatedBytes();
+        for (int i = 0; i < MOVE_COUNT; ++i) {
+            move.run();
+        }
+        long bytes = getAllocatedBytes() - startBytes - baselineBytes;
+        Assert.assertTrue("Allocated " + bytes + " bytes for " + MOVE_COUNT + " moves",
+                bytes < MOVE_COUNT);
+    }
+
+    private static long getAllocatedBytes() {
+        return ((ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    private static class RegionListener extends RecyclerView.SimpleOnItemTouchListener
+            implements FixOnItemTouchListenerRecyclerView.RegionOnItemTouchListener {
+
+        private final boolean mIntercepting;
+
+        RegionListener(boolean intercepting) {
+            mIntercepting = intercepting;
+        }
+
+        @Override
+        public boolean isInTouchRegion(@NonNull RecyclerView recyclerView, float x, float y) {
+            return true;
+        }
+
+        @Override
+        public boolean shouldStopTrackingOutsideRegion() {
+            return true;
+        }
+
+        @Override
+        public boolean onInterceptTouchEvent(@NonNull RecyclerView recyclerView,
+                                             @NonNull MotionEvent event) {
+            return mIntercepting && event.getActionMasked() == MotionEvent.ACTION_MOVE;
+        }
+    }
+
+    private static class TestViewHelper extends SimpleViewHelper {
+
+        @Override
+        protected void superDraw(@NonNull Canvas canvas) {}
+
+        @Override
+        protected void superOnScrollChanged(int left, int top, int oldLeft, int oldTop) {}
+
+        @Override
+        protected boolean superOnInterceptTouchEvent(@NonNull MotionEvent event) {
+            return false;
+        }
+
+        @Override
+        protected boolean superOnTouchEvent(@NonNull MotionEvent event) {
+            return false;
+        }
+
+        @Override
+        protected int computeVerticalScrollRange() {
+            return 0;
+        }
+
+        @Override
+        protected int computeVerticalScrollOffset() {
+            return 0;
+        }
+
+        @Override
+        protected int getScrollX() {
+            return 0;
+        }
+
+        @Override
+        protected void scrollTo(int x, int y) {}
+    }
+}
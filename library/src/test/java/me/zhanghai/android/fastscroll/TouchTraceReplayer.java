@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.zhanghai.android.fastscroll;
+
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import me.zhanghai.android.fastscroll.core.TouchTrace;
+import me.zhanghai.android.fastscroll.core.VirtualScheduler;
+
+/**
+ * Replays a {@link TouchTrace} into a {@link FastScroller} backed by a fake
+ * {@link FastScroller.ViewHelper}, and reports what the scroller did for each event.
+ * <p>
+ * The view should already be laid out. Each replay adds a new scrollbar to its overlay and removes
+ * it afterwards, and each event is followed by a simulated frame without any animation or auto
+ * hide, so replaying the same trace always gives the same result.
+ */
+public class TouchTraceReplayer {
+
+    public static final int NO_SCROLL = -1;
+
+    @NonNull
+    private final ViewGroup mView;
+    private final int mScrollRange;
+
+    public TouchTraceReplayer(@NonNull ViewGroup view, int scrollRange) {
+        mView = view;
+        mScrollRange = scrollRange;
+    }
+
+    @NonNull
+    public Report replay(@NonNull TouchTrace trace) {
+        // A new scroller for each replay, so that no drag state carries over between replays.
+        ReplayViewHelper viewHelper = new ReplayViewHelper(mScrollRange);
+        FastScrollerBuilder builder = new FastScrollerBuilder(mView)
+                .setViewHelper(viewHelper)
+                .setScheduler(new VirtualScheduler());
+        builder.setAnimationHelper(new ReplayAnimationHelper());
+        FastScroller fastScroller = builder.build();
+        try {
+            return replay(trace, viewHelper, fastScroller);
+        } finally {
+            fastScroller.removeFromView();
+        }
+    }
+
+    @NonNull
+    private static Report replay(@NonNull TouchTrace trace, @NonNull ReplayViewHelper viewHelper,
+                                 @NonNull FastScroller fastScroller) {
+        viewHelper.runOnPreDraw();
+        int eventCount = trace.getEventCount();
+        Report report = new Report(eventCount);
+        long downTime = 0;
+        for (int event = 0; event < eventCount; ++event) {
+            int sampleStart = trace.getSampleStart(event);
+            int sampleEnd = trace.getSampleEnd(event);
+            if (sampleStart == sampleEnd) {
+                continue;
+            }
+            int action = trace.getAction(event);
+            if (action == TouchTrace.ACTION_DOWN) {
+                downTime = trace.getSampleTime(sampleStart);
+            }
+            MotionEvent motionEvent = MotionEvent.obtain(downTime,
+                    trace.getSampleTime(sampleStart), action, trace.getSampleX(sampleStart),
+                    trace.getSampleY(sampleStart), 0);
+            for (int sample = sampleStart + 1; sample < sampleEnd; ++sample) {
+                motionEvent.addBatch(trace.getSampleTime(sample), trace.getSampleX(sample),
+                        trace.getSampleY(sample), 1, 1, 0);
+            }
+            viewHelper.mLastScrollToOffset = NO_SCROLL;
+            long startTimeNanos = System.nanoTime();
+            viewHelper.dispatchTouchEvent(motionEvent);
+            viewHelper.runOnPreDraw();
+            report.mEventNanos[event] = System.nanoTime() - startTimeNanos;
+            motionEvent.recycle();
+            report.mScrollToOffsets[event] = viewHelper.mLastScrollToOffset;
+            report.mThumbOffsets[event] = fastScroller.getThumbOffset();
+        }
+        return report;
+    }
+
+    public static class Report {
+
+        @NonNull
+        private final int[] mScrollToOffsets;
+        @NonNull
+        private final int[] mThumbOffsets;
+        @NonNull
+        private final long[] mEventNanos;
+
+        Report(int eventCount) {
+            mScrollToOffsets = new int[eventCount];
+            Arrays.fill(mScrollToOffsets, NO_SCROLL);
+            mThumbOffsets = new int[eventCount];
+            mEventNanos = new long[eventCount];
+        }
+
+        public int getEventCount() {
+            return mScrollToOffsets.length;
+        }
+
+        /**
+         * @return the offset of the last {@link FastScroller.ViewHelper#scrollTo(int)} call for
+         *         the event, or {@link #NO_SCROLL}
+         */
+        public int getScrollToOffset(int event) {
+            return mScrollToOffsets[event];
+        }
+
+        public int getThumbOffset(int event) {
+            return mThumbOffsets[event];
+        }
+
+        /**
+         * @return the time spent handling the event and drawing the following frame
+         */
+        public long getEventNanos(int event) {
+            return mEventNanos[event];
+        }
+
+        public long getTotalNanos() {
+            long totalNanos = 0;
+            for (long eventNanos : mEventNanos) {
+                totalNanos += eventNanos;
+            }
+            return totalNanos;
+        }
+    }
+
+    private static class ReplayViewHelper implements FastScroller.ViewHelper {
+
+        private final int mScrollRange;
+
+        private int mScrollOffset;
+        private int mLastScrollToOffset = NO_SCROLL;
+
+        @Nullable
+        private Runnable mOnPreDraw;
+        @Nullable
+        private Runnable mOnScrollChanged;
+        @Nullable
+        private Predicate<MotionEvent> mOnTouchEvent;
+
+        ReplayViewHelper(int scrollRange) {
+            mScrollRange = scrollRange;
+        }
+
+        @Override
+        public void addOnPreDrawListener(@NonNull Runnable onPreDraw) {
+            mOnPreDraw = onPreDraw;
+        }
+
+        @Override
+        public void addOnScrollChangedListener(@NonNull Runnable onScrollChanged) {
+            mOnScrollChanged = onScrollChanged;
+        }
+
+        @Override
+        public void addOnTouchEventListener(@NonNull Predicate<MotionEvent> onTouchEvent) {
+            mOnTouchEvent = onTouchEvent;
+        }
+
+        @Override
+        public int getScrollRange() {
+            return mScrollRange;
+        }
+
+        @Override
+        public int getScrollOffset() {
+            return mScrollOffset;
+        }
+
+        @Override
+        public void scrollTo(int offset) {
+            mLastScrollToOffset = offset;
+            if (mScrollOffset == offset) {
+                return;
+            }
+            mScrollOffset = offset;
+            if (mOnScrollChanged != null) {
+                mOnScrollChanged.run();
+            }
+        }
+
+        void runOnPreDraw() {
+            if (mOnPreDraw != null) {
+                mOnPreDraw.run();
+            }
+        }
+
+        void dispatchTouchEvent(@NonNull MotionEvent event) {
+            if (mOnTouchEvent != null) {
+                mOnTouchEvent.test(event);
+            }
+        }
+    }
+
+    private static class ReplayAnimationHelper implements FastScroller.AnimationHelper {
+
+        @Override
+        public void showScrollbar(@NonNull View trackView, @NonNull View thumbView) {}
+
+        @Override
+        public void hideScrollbar(@NonNull View trackView, @NonNull View thumbView) {}
+
+        @Override
+        public boolean isScrollbarAutoHideEnabled() {
+            return false;
+        }
+
+        @Override
+        public int getScrollbarAutoHideDelayMillis() {
+            return 0;
+        }
+
+        @Override
+        public void showPopup(@NonNull View popupView) {}
+
+        @Override
+        public void hidePopup(@NonNull View popupView) {}
+    }
+}